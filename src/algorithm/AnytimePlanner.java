@@ -0,0 +1,234 @@
+package algorithm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import problem.ArmConfig;
+import problem.ProblemSpec;
+
+/**
+ * Planner with a wall-clock budget. It starts from a small roadmap and,
+ * until the deadline, repeatedly searches it, shortcuts the path found and
+ * grows the roadmap with more samples and more connections per node. The
+ * best path found so far is kept, and each improvement is recorded as an
+ * (elapsed time, cost) pair so budgets can be tuned per problem class.
+ */
+public class AnytimePlanner {
+	/** Default number of samples in the first roadmap */
+	public static final int DEFAULT_INITIAL_SAMPLES = 200;
+
+	/** The problem being solved; holds the best solution found */
+	private ProblemSpec ps;
+	/** Validity checks for states and edges */
+	private CollisionChecker checker;
+	/** Number of samples in the first roadmap */
+	private int initialSamples = DEFAULT_INITIAL_SAMPLES;
+	/** Seed for the sampler */
+	private long seed = System.nanoTime();
+	/** Cost improvements recorded by the last call to plan */
+	private List<Progress> progress = new ArrayList<Progress>();
+
+	/**
+	 * Constructs a planner for the given problem.
+	 *
+	 * @param ps
+	 *            the problem, which must have been loaded.
+	 */
+	public AnytimePlanner(ProblemSpec ps) {
+		this.ps = ps;
+		this.checker = new CollisionChecker(ps);
+	}
+
+	/**
+	 * Plans until the budget runs out. Whenever a cheaper path is found it is
+	 * set as the problem's solution and its cost, as computed by
+	 * ProblemSpec.calculateTotalCost, is recorded.
+	 *
+	 * @param budgetMillis
+	 *            the time budget in milliseconds.
+	 * @return the waypoints of the best path found, or null if none was found
+	 *         in time.
+	 */
+	public List<ArmConfig> plan(long budgetMillis) {
+		long startTime = System.nanoTime();
+		long deadline = startTime + budgetMillis * 1000000L;
+		progress.clear();
+		List<ArmConfig> best = null;
+		double bestCost = Double.POSITIVE_INFINITY;
+
+		PRM map = new PRM(ps);
+		map.setSampleCount(initialSamples);
+		map.setSeed(seed);
+		map.createMap();
+		Random random = new Random(seed);
+		int jointCount = ps.getInitialState().getJointCount();
+		while (System.nanoTime() < deadline) {
+			List<ArmConfig> path = map.findPath();
+			if (path != null) {
+				path = shortcut(path, random, deadline);
+				List<ArmConfig> steps = PrimitiveSteps.expand(path);
+				double cost = pathCost(steps);
+				if (cost < bestCost) {
+					best = path;
+					bestCost = cost;
+					ps.setPath(steps);
+					progress.add(new Progress(
+							(System.nanoTime() - startTime) / 1000000L,
+							ps.calculateTotalCost()));
+				}
+			}
+			int target = map.getNodeCount() * 2;
+			map.setNeighbourCount(connectionCount(target, jointCount));
+			while (map.getNodeCount() < target && System.nanoTime() < deadline) {
+				ArmConfig cfg = PRM.randomConfig(random, jointCount);
+				if (checker.isValid(cfg)) {
+					map.addNode(cfg);
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Removes waypoints that can be skipped by a direct valid motion, trying
+	 * random pairs until the deadline or a fixed number of attempts.
+	 */
+	private List<ArmConfig> shortcut(List<ArmConfig> path, Random random,
+			long deadline) {
+		path = new ArrayList<ArmConfig>(path);
+		int attempts = 10 * path.size();
+		for (int a = 0; a < attempts && path.size() > 2
+				&& System.nanoTime() < deadline; a++) {
+			int i = random.nextInt(path.size() - 2);
+			int j = i + 2 + random.nextInt(path.size() - i - 2);
+			if (checker.isValidMotion(path.get(i), path.get(j))) {
+				path.subList(i + 1, j).clear();
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * Returns the total endpoint distance along a path, as
+	 * ProblemSpec.calculateTotalCost does for the loaded solution.
+	 */
+	private static double pathCost(List<ArmConfig> path) {
+		double cost = 0;
+		for (int i = 1; i < path.size(); i++) {
+			cost += path.get(i - 1).totalDistance(path.get(i));
+		}
+		return cost;
+	}
+
+	/**
+	 * Returns the number of neighbours to connect to in a roadmap of n
+	 * nodes, following the PRM* rule k = e (1 + 1/d) ln n for a
+	 * d-dimensional configuration space.
+	 */
+	private static int connectionCount(int n, int jointCount) {
+		int d = 2 + jointCount;
+		int k = (int) Math.ceil(Math.E * (1 + 1.0 / d) * Math.log(n));
+		return Math.max(k, PRM.DEFAULT_NEIGHBOURS);
+	}
+
+	/**
+	 * Sets the number of samples in the first roadmap.
+	 *
+	 * @param initialSamples
+	 *            the number of samples.
+	 */
+	public void setInitialSamples(int initialSamples) {
+		this.initialSamples = initialSamples;
+	}
+
+	/**
+	 * Sets the seed for the sampler.
+	 *
+	 * @param seed
+	 *            the seed.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Returns the cost improvements recorded by the last call to plan, in
+	 * the order they were found.
+	 *
+	 * @return a copy of the recorded progress.
+	 */
+	public List<Progress> getProgress() {
+		return new ArrayList<Progress>(progress);
+	}
+
+	/** The cost of the best path at some time after planning started */
+	public static class Progress {
+		/** Milliseconds since planning started */
+		public final long elapsedMillis;
+		/** Total cost of the best path */
+		public final double cost;
+
+		public Progress(long elapsedMillis, double cost) {
+			this.elapsedMillis = elapsedMillis;
+			this.cost = cost;
+		}
+
+		public String toString() {
+			return elapsedMillis + " " + cost;
+		}
+	}
+
+	/**
+	 * Plans for a problem within a time budget, prints the progress and
+	 * saves the best solution.
+	 *
+	 * @param args
+	 *            the command line arguments.
+	 */
+	public static void main(String[] args) {
+		long budget = 1000;
+		String problemPath = null;
+		String solutionPath = null;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i].trim();
+			if (arg.equals("-t")) {
+				i++;
+				if (i < args.length) {
+					budget = Long.valueOf(args[i]);
+				}
+			} else if (problemPath == null) {
+				problemPath = arg;
+			} else {
+				solutionPath = arg;
+			}
+		}
+		if (problemPath == null || solutionPath == null) {
+			System.out.println("Usage: anytime [-t budgetMillis] "
+					+ "problem-file solution-file");
+			System.exit(1);
+		}
+		ProblemSpec ps = new ProblemSpec();
+		try {
+			ps.loadProblem(problemPath);
+		} catch (IOException e) {
+			System.out.println("Invalid problem file: " + e.getMessage());
+			System.exit(1);
+		}
+		AnytimePlanner planner = new AnytimePlanner(ps);
+		if (planner.plan(budget) == null) {
+			System.out.println("No path found.");
+			System.exit(1);
+		}
+		for (Progress p : planner.getProgress()) {
+			System.out.println(p);
+		}
+		try {
+			ps.saveSolution(solutionPath);
+		} catch (IOException e) {
+			System.out.println("Cannot save solution: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
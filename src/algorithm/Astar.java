@@ -1,5 +1,187 @@
 package algorithm;
 
+import java.util.Arrays;
+
+/**
+ * A* search over a PRM roadmap. Edges already found to be blocked are
+ * skipped; unchecked edges are treated as free. The heuristic is the
+ * ArmConfig.totalDistance to the goal, which never overestimates since edge
+ * costs use the same measure.
+ *
+ * An Astar object is a reusable search context: scores and parent pointers
+ * are kept in primitive arrays indexed by node id, the open set is an
+ * IndexedHeap, and only the nodes touched by a search are reset before the
+ * next one. A context must not be shared between threads, but any number of
+ * contexts can search the same roadmap concurrently.
+ */
 public class Astar {
+	/** Node has not been reached by the current search */
+	private static final byte NEW = 0;
+	/** Node is in the open set */
+	private static final byte OPEN = 1;
+	/** Node has been expanded */
+	private static final byte CLOSED = 2;
+
+	/** The roadmap being searched */
+	private PRM map;
+	/** Cost of the best known path to each node */
+	private double[] g;
+	/** g plus heuristic for each node */
+	private double[] f;
+	/** Heuristic value of each touched node */
+	private double[] h;
+	/** Predecessor on the best known path, or -1 */
+	private int[] parent;
+	/** Search state of each node */
+	private byte[] state;
+	/** Ids of nodes touched since the last reset */
+	private int[] touched;
+	/** Number of valid entries in touched */
+	private int touchedCount;
+	/** Open set keyed by f */
+	private IndexedHeap open;
+	/** Number of nodes expanded by the last search */
+	private int expandedCount;
+
+	/**
+	 * Constructs a search context over the given roadmap.
+	 *
+	 * @param map
+	 *            the roadmap, which must have been built.
+	 */
+	public Astar(PRM map) {
+		this.map = map;
+		int n = map.getNodeCount();
+		g = new double[n];
+		f = new double[n];
+		h = new double[n];
+		parent = new int[n];
+		state = new byte[n];
+		touched = new int[Math.min(n, 1024)];
+		open = new IndexedHeap(n);
+		Arrays.fill(g, Double.POSITIVE_INFINITY);
+		Arrays.fill(parent, -1);
+	}
+
+	/**
+	 * Finds a cheapest path between two nodes.
+	 *
+	 * @param start
+	 *            the id of the start node.
+	 * @param goal
+	 *            the id of the goal node.
+	 * @return the node ids along the path from start to goal, or null if
+	 *         there is no path.
+	 */
+	public int[] search(int start, int goal) {
+		reset();
+		ensureCapacity(map.getNodeCount());
+		expandedCount = 0;
+		touch(start, goal);
+		g[start] = 0;
+		f[start] = h[start];
+		state[start] = OPEN;
+		open.push(start, f[start]);
+		while (!open.isEmpty()) {
+			int u = open.pop();
+			if (u == goal) {
+				return tracePath(goal);
+			}
+			state[u] = CLOSED;
+			expandedCount++;
+			int[] ids = map.neighbourIds(u);
+			double[] costs = map.neighbourCosts(u);
+			byte[] states = map.neighbourStates(u);
+			for (int k = 0; k < ids.length; k++) {
+				int v = ids[k];
+				if (states[k] == PRM.INVALID || state[v] == CLOSED) {
+					continue;
+				}
+				if (state[v] == NEW) {
+					touch(v, goal);
+					state[v] = OPEN;
+				}
+				double tentative = g[u] + costs[k];
+				if (tentative < g[v]) {
+					g[v] = tentative;
+					f[v] = tentative + h[v];
+					parent[v] = u;
+					open.push(v, f[v]);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Clears the results of the previous search. Takes time proportional to
+	 * the number of nodes that search touched, not to the roadmap size.
+	 */
+	public void reset() {
+		for (int i = 0; i < touchedCount; i++) {
+			int v = touched[i];
+			g[v] = Double.POSITIVE_INFINITY;
+			parent[v] = -1;
+			state[v] = NEW;
+		}
+		touchedCount = 0;
+		open.clear();
+	}
+
+	/**
+	 * Returns the cost of the path found by the last search to a node.
+	 *
+	 * @param node
+	 *            the node id.
+	 * @return the path cost, or infinity if the node was not reached.
+	 */
+	public double getCost(int node) {
+		return node < g.length ? g[node] : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Returns the number of nodes expanded by the last search.
+	 *
+	 * @return the number of nodes expanded by the last search.
+	 */
+	public int getExpandedCount() {
+		return expandedCount;
+	}
+
+	/** Records that a node is part of this search and caches its heuristic */
+	private void touch(int node, int goal) {
+		if (touchedCount == touched.length) {
+			touched = Arrays.copyOf(touched, touched.length * 2);
+		}
+		touched[touchedCount++] = node;
+		h[node] = map.distance(node, goal);
+	}
+
+	/** Grows the per-node arrays after nodes have been added to the map */
+	private void ensureCapacity(int n) {
+		int old = g.length;
+		if (n <= old) {
+			return;
+		}
+		g = Arrays.copyOf(g, n);
+		f = Arrays.copyOf(f, n);
+		h = Arrays.copyOf(h, n);
+		parent = Arrays.copyOf(parent, n);
+		state = Arrays.copyOf(state, n);
+		Arrays.fill(g, old, n, Double.POSITIVE_INFINITY);
+		Arrays.fill(parent, old, n, -1);
+		open.ensureCapacity(n);
+	}
 
+	private int[] tracePath(int goal) {
+		int length = 0;
+		for (int v = goal; v != -1; v = parent[v]) {
+			length++;
+		}
+		int[] path = new int[length];
+		for (int v = goal; v != -1; v = parent[v]) {
+			path[--length] = v;
+		}
+		return path;
+	}
 }
@@ -0,0 +1,212 @@
+package algorithm;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import problem.ArmConfig;
+import problem.ConfigReader;
+import problem.ProblemSpec;
+
+/**
+ * Answers many (initial, goal) queries against one obstacle environment.
+ * The roadmap is built once from the problem file, every query's endpoints
+ * are connected to it, and the queries are then searched concurrently, one
+ * Astar context per worker thread. Each solution is written to its own file
+ * in the format ProblemSpec.loadSolution reads.
+ *
+ * The query file starts with the number of queries, followed by two lines
+ * per query: the initial configuration and the goal configuration, in the
+ * same format as a problem file.
+ */
+public class BatchPlanner {
+	/** The roadmap shared by all queries */
+	private PRM map;
+	/** Checks the query endpoints */
+	private CollisionChecker checker;
+	/** Number of worker threads */
+	private int threadCount;
+
+	/**
+	 * Constructs a batch planner over a roadmap. The roadmap should not be
+	 * lazy, so that concurrent searches only need to check the primitive
+	 * steps of the edges on their paths.
+	 *
+	 * @param ps
+	 *            the problem whose obstacles the roadmap was built for.
+	 * @param map
+	 *            the roadmap, which must have been built.
+	 * @param threadCount
+	 *            the number of queries to search concurrently.
+	 */
+	public BatchPlanner(ProblemSpec ps, PRM map, int threadCount) {
+		this.map = map;
+		this.checker = new CollisionChecker(ps);
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * Solves every query and writes each solution to
+	 * outputDir/query-&lt;i&gt;.txt, numbering queries from 1. Queries with an
+	 * invalid endpoint or no path through the roadmap are reported on
+	 * standard error and produce no file.
+	 *
+	 * @param queries
+	 *            the (initial, goal) pairs.
+	 * @param outputDir
+	 *            the directory to write the solution files to.
+	 * @return the number of queries solved.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the workers.
+	 */
+	public int solveAll(final List<ArmConfig[]> queries, final String outputDir)
+			throws InterruptedException {
+		final int[][] ends = new int[queries.size()][];
+		for (int q = 0; q < queries.size(); q++) {
+			ArmConfig[] query = queries.get(q);
+			if (checker.isValid(query[0]) && checker.isValid(query[1])) {
+				ends[q] = new int[] { map.addNode(query[0]), map.addNode(query[1]) };
+			} else {
+				System.err.println(String.format(
+						"Query %d: invalid initial or goal state.", q + 1));
+			}
+		}
+
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicInteger solved = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		for (int t = 0; t < threadCount; t++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					Astar astar = new Astar(map);
+					int q;
+					while ((q = next.getAndIncrement()) < ends.length) {
+						if (ends[q] != null && solve(q, ends[q], astar, outputDir)) {
+							solved.incrementAndGet();
+						}
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		return solved.get();
+	}
+
+	/** Searches one query and writes its solution file */
+	private boolean solve(int q, int[] ends, Astar astar, String outputDir) {
+		List<ArmConfig> waypoints = map.findPath(ends[0], ends[1], astar);
+		if (waypoints == null) {
+			System.err.println(String.format("Query %d: no path found.", q + 1));
+			return false;
+		}
+		String filename = new File(outputDir, String.format("query-%d.txt", q + 1))
+				.getPath();
+		try {
+			PathWriter.write(waypoints, filename);
+			return true;
+		} catch (IOException e) {
+			System.err.println(String.format("Query %d: %s", q + 1, e.getMessage()));
+			return false;
+		}
+	}
+
+	/**
+	 * Loads (initial, goal) pairs from a query file.
+	 *
+	 * @param filename
+	 *            the path of the query file.
+	 * @param jointCount
+	 *            the number of joints every configuration must have.
+	 * @return the queries, each an array of the initial and goal states.
+	 * @throws IOException
+	 *             if the file doesn't exist or is malformed.
+	 */
+	public static List<ArmConfig[]> loadQueries(String filename, int jointCount)
+			throws IOException {
+		ConfigReader input = new ConfigReader(filename);
+		try {
+			input.expectLine();
+			int numQueries = input.nextInt();
+
+			List<ArmConfig[]> queries = new ArrayList<ArmConfig[]>(Math.max(numQueries, 0));
+			for (int i = 0; i < numQueries; i++) {
+				ArmConfig[] query = new ArmConfig[2];
+				for (int k = 0; k < 2; k++) {
+					input.expectLine();
+					query[k] = input.nextConfig();
+					if (query[k].getJointCount() != jointCount) {
+						throw new IOException(String.format(
+								"Wrong joint count on line %d.", input.getLineNo()));
+					}
+				}
+				queries.add(query);
+			}
+			return queries;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Builds a roadmap for a problem and solves a file of queries against it.
+	 * Exits with status 0 if every query was solved, and 1 otherwise.
+	 *
+	 * @param args
+	 *            the command line arguments.
+	 */
+	public static void main(String[] args) {
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		int sampleCount = PRM.DEFAULT_SAMPLES;
+		List<String> files = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i].trim();
+			if (arg.equals("-j")) {
+				i++;
+				if (i < args.length) {
+					threadCount = Integer.valueOf(args[i]);
+				}
+			} else if (arg.equals("-n")) {
+				i++;
+				if (i < args.length) {
+					sampleCount = Integer.valueOf(args[i]);
+				}
+			} else {
+				files.add(arg);
+			}
+		}
+		if (files.size() != 3) {
+			System.out.println("Usage: batchplanner [-j threads] [-n samples] "
+					+ "problem-file query-file output-dir");
+			System.exit(1);
+		}
+		ProblemSpec ps = new ProblemSpec();
+		List<ArmConfig[]> queries = null;
+		try {
+			ps.loadProblem(files.get(0));
+			queries = loadQueries(files.get(1), ps.getInitialState().getJointCount());
+		} catch (IOException e) {
+			System.out.println("Invalid input file: " + e.getMessage());
+			System.exit(1);
+		}
+
+		PRM map = new PRM(ps);
+		map.setSampleCount(sampleCount);
+		map.setThreadCount(threadCount);
+		map.createMap();
+		try {
+			int solved = new BatchPlanner(ps, map, threadCount).solveAll(
+					queries, files.get(2));
+			System.out.println(String.format("Solved %d of %d queries.", solved,
+					queries.size()));
+			System.exit(solved == queries.size() ? 0 : 1);
+		} catch (InterruptedException e) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,264 @@
+package algorithm;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import problem.ArmConfig;
+import tester.Tester;
+
+/**
+ * Bounded memo of per-state collision results. Configurations are quantised
+ * to the primitive step resolution (Tester.MAX_BASE_STEP for the base,
+ * Tester.MAX_JOINT_STEP for each angle), so all configurations within one
+ * primitive step of each other on every coordinate share an entry; states
+ * that differ by less than a legal step are treated as equivalent. A cached
+ * verdict may therefore belong to a nearby state rather than the one asked
+ * about, and can disagree with tester.Tester near obstacle and workspace
+ * boundaries, so caching is opt-in and never used for final path checks.
+ *
+ * Entries live in a fixed table sized from a memory cap and divided into
+ * buckets of WAYS slots. A key is stored in the bucket its hash selects;
+ * when that bucket is full, an entry is evicted with the CLOCK algorithm:
+ * the bucket's hand skips over (and clears) recently referenced slots and
+ * evicts the first unreferenced one. Nothing is allocated per entry.
+ *
+ * Instances are safe to share between threads; buckets are guarded by a
+ * fixed set of striped locks.
+ */
+public class CollisionCache {
+	/** Result of a lookup that found no entry */
+	public static final byte UNKNOWN = 0;
+	/** Result of a lookup for a state that passed the checks */
+	public static final byte VALID = 1;
+	/** Result of a lookup for a state that failed the checks */
+	public static final byte INVALID = 2;
+
+	/** Number of slots per bucket */
+	public static final int WAYS = 8;
+	/** Number of locks striped over the buckets */
+	private static final int LOCK_COUNT = 64;
+	/** Flag bit: the slot's state is valid */
+	private static final byte FLAG_VALID = 1;
+	/** Flag bit: the slot was referenced since the hand last passed it */
+	private static final byte FLAG_REFERENCED = 2;
+
+	/** Number of quantised coordinates per key */
+	private int stride;
+	/** Hash of each slot's key, or 0 if the slot is empty */
+	private long[] hashes;
+	/** Quantised coordinates of each slot's key */
+	private int[] keys;
+	/** FLAG_* bits of each slot */
+	private byte[] flags;
+	/** CLOCK hand of each bucket, as a way index */
+	private byte[] hands;
+	/** Number of buckets minus one; the bucket count is a power of two */
+	private int bucketMask;
+	/** Locks guarding the buckets */
+	private Object[] locks;
+
+	private LongAdder hits = new LongAdder();
+	private LongAdder misses = new LongAdder();
+	private LongAdder evictions = new LongAdder();
+
+	/**
+	 * Constructs an empty cache whose table takes at most maxBytes, but has
+	 * at least one bucket.
+	 *
+	 * @param jointCount
+	 *            the number of joints of every configuration.
+	 * @param maxBytes
+	 *            the memory cap for the table.
+	 */
+	public CollisionCache(int jointCount, long maxBytes) {
+		stride = 2 + jointCount;
+		long slotBytes = 8 + 4 * stride + 1;
+		long buckets = Math.max(maxBytes / (slotBytes * WAYS), 1);
+		// Both bounds are powers of two, so bucketMask stays a contiguous mask.
+		buckets = Math.min(Long.highestOneBit(buckets),
+				Integer.highestOneBit((1 << 30) / (WAYS * stride)));
+		int slots = (int) buckets * WAYS;
+		bucketMask = (int) buckets - 1;
+		hashes = new long[slots];
+		keys = new int[slots * stride];
+		flags = new byte[slots];
+		hands = new byte[(int) buckets];
+		locks = new Object[LOCK_COUNT];
+		for (int i = 0; i < LOCK_COUNT; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Returns the quantised key of a configuration, for use with get and
+	 * put.
+	 *
+	 * @param cfg
+	 *            the configuration.
+	 * @return the base and joint angles in units of the primitive steps.
+	 */
+	public int[] key(ArmConfig cfg) {
+		int[] key = new int[stride];
+		key[0] = (int) Math.round(cfg.baseX() / Tester.MAX_BASE_STEP);
+		key[1] = (int) Math.round(cfg.baseY() / Tester.MAX_BASE_STEP);
+		for (int i = 0; i < cfg.getJointCount(); i++) {
+			key[2 + i] = (int) Math.round(cfg.angle(i) / Tester.MAX_JOINT_STEP);
+		}
+		return key;
+	}
+
+	/**
+	 * Looks up a key and marks its entry as recently referenced.
+	 *
+	 * @param key
+	 *            a key returned by key(ArmConfig).
+	 * @return VALID or INVALID if the key is cached, UNKNOWN otherwise.
+	 */
+	public byte get(int[] key) {
+		long hash = hash(key);
+		int bucket = (int) hash & bucketMask;
+		synchronized (locks[bucket & (LOCK_COUNT - 1)]) {
+			int slot = find(bucket, hash, key);
+			if (slot >= 0) {
+				flags[slot] |= FLAG_REFERENCED;
+				hits.increment();
+				return (flags[slot] & FLAG_VALID) != 0 ? VALID : INVALID;
+			}
+		}
+		misses.increment();
+		return UNKNOWN;
+	}
+
+	/**
+	 * Stores the result for a key, evicting another entry of the same bucket
+	 * if it is full.
+	 *
+	 * @param key
+	 *            a key returned by key(ArmConfig).
+	 * @param valid
+	 *            whether the state passed the checks.
+	 */
+	public void put(int[] key, boolean valid) {
+		long hash = hash(key);
+		int bucket = (int) hash & bucketMask;
+		byte flag = valid ? FLAG_VALID : 0;
+		synchronized (locks[bucket & (LOCK_COUNT - 1)]) {
+			int slot = find(bucket, hash, key);
+			if (slot < 0) {
+				slot = victim(bucket);
+				hashes[slot] = hash;
+				System.arraycopy(key, 0, keys, slot * stride, stride);
+			}
+			flags[slot] = flag;
+		}
+	}
+
+	/**
+	 * Removes every entry. The counters are kept.
+	 */
+	public void clear() {
+		for (int i = 0; i < LOCK_COUNT; i++) {
+			synchronized (locks[i]) {
+				for (int bucket = i; bucket <= bucketMask; bucket += LOCK_COUNT) {
+					for (int w = 0; w < WAYS; w++) {
+						hashes[bucket * WAYS + w] = 0;
+						flags[bucket * WAYS + w] = 0;
+					}
+					hands[bucket] = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of slots, which bounds the number of entries.
+	 *
+	 * @return the capacity of the table.
+	 */
+	public int getCapacity() {
+		return hashes.length;
+	}
+
+	/**
+	 * Returns the number of lookups that found an entry.
+	 *
+	 * @return the hit count.
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of lookups that found no entry.
+	 *
+	 * @return the miss count.
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of entries evicted to make room for others.
+	 *
+	 * @return the eviction count.
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public String toString() {
+		long h = getHits();
+		long m = getMisses();
+		return String.format("hits %d, misses %d (%.1f%% hit rate), evictions %d",
+				h, m, h + m == 0 ? 0 : 100.0 * h / (h + m), getEvictions());
+	}
+
+	/** Returns the slot holding the key in the bucket, or -1 */
+	private int find(int bucket, long hash, int[] key) {
+		for (int slot = bucket * WAYS; slot < (bucket + 1) * WAYS; slot++) {
+			if (hashes[slot] == hash && sameKey(slot, key)) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	/** Returns an empty slot of the bucket, or evicts one with CLOCK */
+	private int victim(int bucket) {
+		int first = bucket * WAYS;
+		for (int slot = first; slot < first + WAYS; slot++) {
+			if (hashes[slot] == 0) {
+				return slot;
+			}
+		}
+		while (true) {
+			int slot = first + hands[bucket];
+			hands[bucket] = (byte) ((hands[bucket] + 1) % WAYS);
+			if ((flags[slot] & FLAG_REFERENCED) != 0) {
+				flags[slot] &= ~FLAG_REFERENCED;
+			} else {
+				evictions.increment();
+				return slot;
+			}
+		}
+	}
+
+	private boolean sameKey(int slot, int[] key) {
+		int offset = slot * stride;
+		for (int d = 0; d < stride; d++) {
+			if (keys[offset + d] != key[d]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Mixes the key into a non-zero 64-bit hash */
+	private static long hash(int[] key) {
+		long h = 0xCBF29CE484222325L;
+		for (int k : key) {
+			h = (h ^ k) * 0x9E3779B97F4A7C15L;
+			h ^= h >>> 29;
+		}
+		return h == 0 ? 1 : h;
+	}
+}
@@ -0,0 +1,375 @@
+package algorithm;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+
+import problem.ArmConfig;
+import problem.Obstacle;
+import problem.ProblemSpec;
+import tester.ObstacleIndex;
+import tester.Tester;
+
+/**
+ * Validity checks for single configurations and for straight-line motions
+ * between two configurations. The per-configuration predicates are the ones
+ * used by tester.Tester, so any state accepted by isValid is accepted by the
+ * tester. isValidEdge only checks states at the edge resolution, which is
+ * coarser than the primitive steps a solution file is made of, so it is a
+ * quick filter rather than a guarantee. isValidPrimitiveEdge checks exactly
+ * the states that are written, and a planner must run it, or isValidMotion,
+ * which runs both, before it accepts an edge.
+ *
+ * A checker may be given a CollisionCache, which then memoises the
+ * geometric checks (bounds, self collision and obstacles) per quantised
+ * state. The joint angle limits are always checked exactly. Cached verdicts
+ * are shared by all states within a primitive step of each other, so with a
+ * cache isValid and isValidEdge no longer agree exactly with the tester;
+ * isValidPrimitiveEdge and isValidPath always bypass the cache.
+ *
+ * A checker may also be given a DistanceField of the same obstacles, as a
+ * fast pre-check for obstacle collisions: a link whose midpoint the field
+ * bounds farther than half a link from every obstacle is clear, so if every
+ * link is, the exact test is skipped. Otherwise the exact test decides, so
+ * the verdicts are the same as without the field.
+ *
+ * Instances are immutable after construction and safe to share between
+ * threads.
+ */
+public class CollisionChecker {
+	/** Default maximum endpoint movement between two checked states on an edge */
+	public static final double DEFAULT_RESOLUTION = ArmConfig.LINK_LENGTH / 10;
+	/** Farthest any point of a link is from its midpoint, with some slack */
+	private static final double HALF_LINK = ArmConfig.LINK_LENGTH / 2 * (1 + 1e-9);
+
+	/** The tester whose predicates are used */
+	private Tester tester;
+	/** The obstacles to check against */
+	private ObstacleIndex obstacles;
+	/** Maximum endpoint movement between two checked states on an edge */
+	private double resolution;
+	/** Memo of geometric check results, or null */
+	private CollisionCache cache;
+	/** Distance field of the obstacles for the pre-check, or null */
+	private DistanceField field;
+
+	/**
+	 * Constructs a checker for the obstacles of the given problem, with the
+	 * default tester error and edge resolution.
+	 *
+	 * @param ps
+	 *            the problem to check against.
+	 */
+	public CollisionChecker(ProblemSpec ps) {
+		this(ps, DEFAULT_RESOLUTION);
+	}
+
+	/**
+	 * Constructs a checker for the obstacles of the given problem.
+	 *
+	 * @param ps
+	 *            the problem to check against.
+	 * @param resolution
+	 *            the maximum endpoint movement between two checked states
+	 *            when validating an edge.
+	 */
+	public CollisionChecker(ProblemSpec ps, double resolution) {
+		this(ps.getObstacles(), resolution);
+	}
+
+	/**
+	 * Constructs a checker for the given obstacles.
+	 *
+	 * @param obstacles
+	 *            the obstacles to check against.
+	 * @param resolution
+	 *            the maximum endpoint movement between two checked states
+	 *            when validating an edge.
+	 */
+	public CollisionChecker(List<Obstacle> obstacles, double resolution) {
+		this(obstacles, resolution, null);
+	}
+
+	/**
+	 * Constructs a checker for the given obstacles that memoises its results.
+	 *
+	 * @param obstacles
+	 *            the obstacles to check against.
+	 * @param resolution
+	 *            the maximum endpoint movement between two checked states
+	 *            when validating an edge.
+	 * @param cache
+	 *            the cache to use, or null for none. It must only be shared
+	 *            with checkers for the same obstacles.
+	 */
+	public CollisionChecker(List<Obstacle> obstacles, double resolution,
+			CollisionCache cache) {
+		this(obstacles, resolution, cache, null);
+	}
+
+	/**
+	 * Constructs a checker for the given obstacles that memoises its results
+	 * and pre-checks obstacle collisions with a distance field.
+	 *
+	 * @param obstacles
+	 *            the obstacles to check against.
+	 * @param resolution
+	 *            the maximum endpoint movement between two checked states
+	 *            when validating an edge.
+	 * @param cache
+	 *            the cache to use, or null for none. It must only be shared
+	 *            with checkers for the same obstacles.
+	 * @param field
+	 *            the distance field of the same obstacles, or null for none.
+	 */
+	public CollisionChecker(List<Obstacle> obstacles, double resolution,
+			CollisionCache cache, DistanceField field) {
+		this.tester = new Tester();
+		this.obstacles = tester.indexObstacles(obstacles);
+		this.resolution = resolution;
+		this.cache = cache;
+		this.field = field;
+	}
+
+	/**
+	 * Returns whether the given configuration passes every per-state test
+	 * the tester runs: joint angles, self collision, bounds and obstacles.
+	 *
+	 * @param cfg
+	 *            the configuration to test.
+	 * @return whether the configuration is valid.
+	 */
+	public boolean isValid(ArmConfig cfg) {
+		if (!tester.hasValidJointAngles(cfg)) {
+			return false;
+		}
+		if (cache == null) {
+			return isClear(cfg);
+		}
+		int[] key = cache.key(cfg);
+		byte cached = cache.get(key);
+		if (cached != CollisionCache.UNKNOWN) {
+			return cached == CollisionCache.VALID;
+		}
+		boolean valid = isClear(cfg);
+		cache.put(key, valid);
+		return valid;
+	}
+
+	/** Runs every check of isValid without consulting the cache */
+	private boolean isValidExactly(ArmConfig cfg) {
+		return tester.hasValidJointAngles(cfg) && isClear(cfg);
+	}
+
+	/** Runs the geometric checks: bounds, self collision and obstacles */
+	private boolean isClear(ArmConfig cfg) {
+		return tester.fitsBounds(cfg) && !tester.hasSelfCollision(cfg)
+				&& (isFieldClear(cfg) || !tester.hasCollision(cfg, obstacles));
+	}
+
+	/**
+	 * Returns whether the distance field shows every link clear of the
+	 * obstacles: every point of a link is within half a link of its
+	 * midpoint.
+	 */
+	private boolean isFieldClear(ArmConfig cfg) {
+		if (field == null) {
+			return false;
+		}
+		for (int i = 0; i < cfg.getJointCount(); i++) {
+			double x = (cfg.jointX(i) + cfg.jointX(i + 1)) / 2;
+			double y = (cfg.jointY(i) + cfg.jointY(i + 1)) / 2;
+			if (field.lowerBound(x, y) <= HALF_LINK) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether the straight-line motion between two configurations is
+	 * valid. The endpoints are assumed to be valid already; intermediate
+	 * states are checked coarse-to-fine so that blocked edges are usually
+	 * rejected after only a few checks.
+	 *
+	 * @param cfg0
+	 *            the start of the edge.
+	 * @param cfg1
+	 *            the end of the edge.
+	 * @return whether every checked state along the edge is valid.
+	 */
+	public boolean isValidEdge(ArmConfig cfg0, ArmConfig cfg1) {
+		int segments = (int) Math.ceil(motionBound(cfg0, cfg1) / resolution);
+		for (int stride = Integer.highestOneBit(Math.max(segments, 1)); stride >= 1; stride >>= 1) {
+			for (int i = stride; i < segments; i += stride << 1) {
+				if (!isValid(interpolate(cfg0, cfg1, (double) i / segments))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether every state of the straight-line motion between two
+	 * configurations that PrimitiveSteps.expand and PathWriter produce is
+	 * valid, both ends included. Each state is rebuilt from its base and
+	 * joint angles as the tester reads it back from a solution file, and
+	 * checked without the cache, so the verdict agrees with the tester
+	 * exactly. The intermediate states are checked coarse-to-fine, as in
+	 * isValidEdge.
+	 *
+	 * @param cfg0
+	 *            the start of the edge.
+	 * @param cfg1
+	 *            the end of the edge.
+	 * @return whether every primitive state along the edge is valid.
+	 */
+	public boolean isValidPrimitiveEdge(ArmConfig cfg0, ArmConfig cfg1) {
+		if (!isValidExactly(primitiveState(cfg0, cfg1, 0))
+				|| !isValidExactly(primitiveState(cfg1, cfg0, 0))) {
+			return false;
+		}
+		int steps = PrimitiveSteps.count(cfg0, cfg1);
+		for (int stride = Integer.highestOneBit(Math.max(steps, 1)); stride >= 1; stride >>= 1) {
+			for (int i = stride; i < steps; i += stride << 1) {
+				if (!isValidExactly(primitiveState(cfg0, cfg1, (double) i / steps))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether the straight-line motion between two configurations is
+	 * valid as the tester will see it once written out: isValidEdge first,
+	 * which rejects most blocked edges after a few checks, then
+	 * isValidPrimitiveEdge, which decides.
+	 *
+	 * @param cfg0
+	 *            the start of the edge.
+	 * @param cfg1
+	 *            the end of the edge.
+	 * @return whether every primitive state along the edge is valid.
+	 */
+	public boolean isValidMotion(ArmConfig cfg0, ArmConfig cfg1) {
+		return isValidEdge(cfg0, cfg1) && isValidPrimitiveEdge(cfg0, cfg1);
+	}
+
+	/**
+	 * Returns whether every state of the primitive-step path through the
+	 * given waypoints is valid, as isValidPrimitiveEdge decides it for each
+	 * motion between consecutive waypoints.
+	 *
+	 * @param waypoints
+	 *            the waypoints, joined by straight-line motions.
+	 * @return whether every primitive state of the path is valid.
+	 */
+	public boolean isValidPath(List<ArmConfig> waypoints) {
+		if (waypoints.size() == 1) {
+			ArmConfig cfg = waypoints.get(0);
+			return isValidExactly(primitiveState(cfg, cfg, 0));
+		}
+		for (int w = 1; w < waypoints.size(); w++) {
+			if (!isValidPrimitiveEdge(waypoints.get(w - 1), waypoints.get(w))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the state a fraction t of the way from cfg0 to cfg1 as written
+	 * to a solution file, with its links computed afresh from the base and
+	 * the joint angles. At t = 0 this is cfg0 itself, as the tester reads it.
+	 */
+	private static ArmConfig primitiveState(ArmConfig cfg0, ArmConfig cfg1,
+			double t) {
+		double[] angles = new double[cfg0.getJointCount()];
+		for (int i = 0; i < angles.length; i++) {
+			angles[i] = cfg0.angle(i) + t * (cfg1.angle(i) - cfg0.angle(i));
+		}
+		return new ArmConfig(cfg0.baseX() + t * (cfg1.baseX() - cfg0.baseX()),
+				cfg0.baseY() + t * (cfg1.baseY() - cfg0.baseY()), angles);
+	}
+
+	/**
+	 * Returns the edge resolution of this checker.
+	 *
+	 * @return the maximum endpoint movement between two checked states.
+	 */
+	public double getResolution() {
+		return resolution;
+	}
+
+	/**
+	 * Returns the distance field this checker pre-checks with.
+	 *
+	 * @return the field, or null if there is none.
+	 */
+	public DistanceField getDistanceField() {
+		return field;
+	}
+
+	/**
+	 * Returns the cache of this checker.
+	 *
+	 * @return the cache, or null if results are not memoised.
+	 */
+	public CollisionCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Returns an upper bound on how far any link endpoint moves during the
+	 * straight-line motion from cfg0 to cfg1: the base displacement plus, for
+	 * each joint, its angle change times the length of the chain beyond it.
+	 *
+	 * @param cfg0
+	 *            the start of the motion.
+	 * @param cfg1
+	 *            the end of the motion.
+	 * @return an upper bound on the movement of any link endpoint.
+	 */
+	public static double motionBound(ArmConfig cfg0, ArmConfig cfg1) {
+		int n = cfg0.getJointCount();
+		double bound = Point2D.distance(cfg0.baseX(), cfg0.baseY(), cfg1.baseX(),
+				cfg1.baseY());
+		for (int i = 0; i < n; i++) {
+			bound += Math.abs(cfg1.angle(i) - cfg0.angle(i))
+					* ArmConfig.LINK_LENGTH * (n - i);
+		}
+		return bound;
+	}
+
+	/**
+	 * Returns the configuration a fraction t of the way from cfg0 to cfg1,
+	 * interpolating the base and each joint angle linearly. When only the
+	 * angles or only the base move, the links are derived from cfg0 with
+	 * ArmConfig.withJointAngles or withBaseDelta.
+	 *
+	 * @param cfg0
+	 *            the configuration at t = 0.
+	 * @param cfg1
+	 *            the configuration at t = 1.
+	 * @param t
+	 *            the interpolation parameter.
+	 * @return the interpolated configuration.
+	 */
+	public static ArmConfig interpolate(ArmConfig cfg0, ArmConfig cfg1, double t) {
+		double[] angles = new double[cfg0.getJointCount()];
+		boolean sameAngles = true;
+		for (int i = 0; i < angles.length; i++) {
+			angles[i] = cfg0.angle(i) + t * (cfg1.angle(i) - cfg0.angle(i));
+			sameAngles &= angles[i] == cfg0.angle(i);
+		}
+		double dx = t * (cfg1.baseX() - cfg0.baseX());
+		double dy = t * (cfg1.baseY() - cfg0.baseY());
+		if (dx == 0 && dy == 0) {
+			return cfg0.withJointAngles(angles);
+		} else if (sameAngles) {
+			return cfg0.withBaseDelta(dx, dy);
+		}
+		return new ArmConfig(cfg0.baseX() + dx, cfg0.baseY() + dy, angles);
+	}
+}
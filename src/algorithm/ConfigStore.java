@@ -0,0 +1,309 @@
+package algorithm;
+
+import java.util.Arrays;
+
+import problem.ArmConfig;
+
+/**
+ * Structure-of-arrays store of arm configurations for planners. Node i's
+ * coordinates (base x, base y, then one angle per joint) live in one flat
+ * double array at [i * stride, (i + 1) * stride) with stride = 2 +
+ * jointCount, and each node has a cost and a parent id in parallel
+ * primitive arrays. Planners refer to nodes by int id; an ArmConfig is only
+ * built on request, e.g. for collision checking.
+ */
+public class ConfigStore {
+	/** Number of joints of every configuration */
+	private int jointCount;
+	/** Number of coordinates per configuration */
+	private int stride;
+	/** Coordinates of all configurations */
+	private double[] coords;
+	/** Cost of each node, e.g. path cost from a tree root */
+	private double[] cost;
+	/** Parent of each node, or -1 */
+	private int[] parent;
+	/** Number of nodes */
+	private int size;
+	/** Whether built configurations use TrigTable for on-grid angles */
+	private boolean tableTrig = false;
+
+	/**
+	 * Constructs an empty store.
+	 *
+	 * @param jointCount
+	 *            the number of joints of every configuration.
+	 * @param capacity
+	 *            the number of nodes to allocate space for.
+	 */
+	public ConfigStore(int jointCount, int capacity) {
+		this.jointCount = jointCount;
+		this.stride = 2 + jointCount;
+		capacity = Math.max(capacity, 2);
+		coords = new double[capacity * stride];
+		cost = new double[capacity];
+		parent = new int[capacity];
+	}
+
+	/**
+	 * Appends a configuration given as coordinates, with zero cost and no
+	 * parent.
+	 *
+	 * @param point
+	 *            base x, base y and the joint angles.
+	 * @return the id of the new node.
+	 */
+	public int add(double[] point) {
+		if (size == parent.length) {
+			grow(size * 2);
+		}
+		int id = size++;
+		System.arraycopy(point, 0, coords, id * stride, stride);
+		cost[id] = 0;
+		parent[id] = -1;
+		return id;
+	}
+
+	/**
+	 * Appends a configuration, with zero cost and no parent.
+	 *
+	 * @param cfg
+	 *            the configuration.
+	 * @return the id of the new node.
+	 */
+	public int add(ArmConfig cfg) {
+		return add(KdTree.coordinates(cfg));
+	}
+
+	/**
+	 * Appends count configurations copied from a flat coordinate array, as
+	 * laid out by this store.
+	 *
+	 * @param source
+	 *            the coordinates.
+	 * @param count
+	 *            the number of configurations.
+	 */
+	public void addAll(double[] source, int count) {
+		if (size + count > parent.length) {
+			grow(Math.max(size + count, size * 2));
+		}
+		System.arraycopy(source, 0, coords, size * stride, count * stride);
+		Arrays.fill(cost, size, size + count, 0);
+		Arrays.fill(parent, size, size + count, -1);
+		size += count;
+	}
+
+	/**
+	 * Returns the number of nodes.
+	 *
+	 * @return the number of nodes.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of joints of every configuration.
+	 *
+	 * @return the joint count.
+	 */
+	public int getJointCount() {
+		return jointCount;
+	}
+
+	/**
+	 * Returns the number of coordinates per configuration.
+	 *
+	 * @return 2 + the joint count.
+	 */
+	public int getStride() {
+		return stride;
+	}
+
+	/**
+	 * Returns the backing coordinate array, in which node i starts at
+	 * i * getStride(). The array may be replaced when nodes are added.
+	 *
+	 * @return the backing coordinate array.
+	 */
+	public double[] rawCoordinates() {
+		return coords;
+	}
+
+	/**
+	 * Returns one coordinate of a node.
+	 *
+	 * @param i
+	 *            the node id.
+	 * @param d
+	 *            the coordinate index: 0 and 1 for the base, 2 + j for joint j.
+	 * @return the coordinate.
+	 */
+	public double get(int i, int d) {
+		return coords[i * stride + d];
+	}
+
+	/**
+	 * Returns a copy of the coordinates of a node.
+	 *
+	 * @param i
+	 *            the node id.
+	 * @return base x, base y and the joint angles.
+	 */
+	public double[] coordinates(int i) {
+		return Arrays.copyOfRange(coords, i * stride, (i + 1) * stride);
+	}
+
+	/**
+	 * Builds the ArmConfig of a node.
+	 *
+	 * @param i
+	 *            the node id.
+	 * @return a new ArmConfig for node i.
+	 */
+	public ArmConfig toConfig(int i) {
+		int offset = i * stride;
+		return new ArmConfig(coords[offset], coords[offset + 1],
+				Arrays.copyOfRange(coords, offset + 2, offset + stride), tableTrig);
+	}
+
+	/**
+	 * Sets whether the configurations built by toConfig look up the sines
+	 * and cosines of on-grid joint angles in TrigTable. Off by default.
+	 *
+	 * @param tableTrig
+	 *            true to use the tables, false to always compute exactly.
+	 */
+	public void setTableTrig(boolean tableTrig) {
+		this.tableTrig = tableTrig;
+	}
+
+	/**
+	 * Returns the cost of a node.
+	 *
+	 * @param i
+	 *            the node id.
+	 * @return the cost of node i.
+	 */
+	public double getCost(int i) {
+		return cost[i];
+	}
+
+	/**
+	 * Sets the cost of a node.
+	 *
+	 * @param i
+	 *            the node id.
+	 * @param value
+	 *            the new cost.
+	 */
+	public void setCost(int i, double value) {
+		cost[i] = value;
+	}
+
+	/**
+	 * Returns the parent of a node.
+	 *
+	 * @param i
+	 *            the node id.
+	 * @return the parent id, or -1 if node i has no parent.
+	 */
+	public int getParent(int i) {
+		return parent[i];
+	}
+
+	/**
+	 * Sets the parent of a node.
+	 *
+	 * @param i
+	 *            the node id.
+	 * @param value
+	 *            the parent id, or -1 for none.
+	 */
+	public void setParent(int i, int value) {
+		parent[i] = value;
+	}
+
+	/**
+	 * Returns ArmConfig.totalDistance between two nodes, computed from the
+	 * coordinates without building either configuration.
+	 *
+	 * @param i
+	 *            a node id.
+	 * @param j
+	 *            another node id.
+	 * @return the total straight-line distance over the base and all link
+	 *         endpoints.
+	 */
+	public double totalDistance(int i, int j) {
+		return totalDistance(coords, i * stride, coords, j * stride, jointCount);
+	}
+
+	/**
+	 * Returns ArmConfig.totalDistance between two configurations stored as
+	 * coordinates at the given offsets.
+	 *
+	 * @param p
+	 *            the array holding the first configuration.
+	 * @param offP
+	 *            the offset of the first configuration.
+	 * @param q
+	 *            the array holding the second configuration.
+	 * @param offQ
+	 *            the offset of the second configuration.
+	 * @param jointCount
+	 *            the number of joints.
+	 * @return the total straight-line distance over the base and all link
+	 *         endpoints.
+	 */
+	public static double totalDistance(double[] p, int offP, double[] q, int offQ,
+			int jointCount) {
+		double px = p[offP];
+		double py = p[offP + 1];
+		double qx = q[offQ];
+		double qy = q[offQ + 1];
+		double dist = Math.sqrt((px - qx) * (px - qx) + (py - qy) * (py - qy));
+		double angleP = 0;
+		double angleQ = 0;
+		for (int j = 0; j < jointCount; j++) {
+			angleP += p[offP + 2 + j];
+			angleQ += q[offQ + 2 + j];
+			px += ArmConfig.LINK_LENGTH * Math.cos(angleP);
+			py += ArmConfig.LINK_LENGTH * Math.sin(angleP);
+			qx += ArmConfig.LINK_LENGTH * Math.cos(angleQ);
+			qy += ArmConfig.LINK_LENGTH * Math.sin(angleQ);
+			dist += Math.sqrt((px - qx) * (px - qx) + (py - qy) * (py - qy));
+		}
+		return dist;
+	}
+
+	/**
+	 * Returns CollisionChecker.motionBound for the straight-line motion
+	 * between two nodes, computed from the coordinates.
+	 *
+	 * @param i
+	 *            the start of the motion.
+	 * @param j
+	 *            the end of the motion.
+	 * @return an upper bound on the movement of any link endpoint.
+	 */
+	public double motionBound(int i, int j) {
+		int a = i * stride;
+		int b = j * stride;
+		double dx = coords[b] - coords[a];
+		double dy = coords[b + 1] - coords[a + 1];
+		double bound = Math.sqrt(dx * dx + dy * dy);
+		for (int k = 0; k < jointCount; k++) {
+			bound += Math.abs(coords[b + 2 + k] - coords[a + 2 + k])
+					* ArmConfig.LINK_LENGTH * (jointCount - k);
+		}
+		return bound;
+	}
+
+	private void grow(int capacity) {
+		coords = Arrays.copyOf(coords, capacity * stride);
+		cost = Arrays.copyOf(cost, capacity);
+		parent = Arrays.copyOf(parent, capacity);
+	}
+}
@@ -0,0 +1,448 @@
+package algorithm;
+
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import problem.Obstacle;
+import problem.ProblemSpec;
+import tester.Tester;
+
+/**
+ * Signed distance from the obstacles, sampled on a square grid over the
+ * workspace Tester.BOUNDS. Outside the obstacles the value is the distance
+ * to the nearest one; inside, it is minus the depth within the obstacle
+ * containing the point most deeply. Either way the field changes by at most
+ * the distance moved, which is what makes the lower bounds below safe.
+ * Distances are measured to the obstacle rectangles themselves, so they are
+ * never larger than the distances the tester measures to its shrunk ones.
+ *
+ * The grid is built in parallel, and can be saved to a cache file and
+ * loaded again for the same obstacles and resolution. When obstacles
+ * change, update recomputes only the grid points near the changed ones.
+ * CollisionChecker can use a field as a pre-check for obstacle collisions.
+ */
+public class DistanceField {
+	/** Default number of grid cells along each side of the workspace */
+	public static final int DEFAULT_RESOLUTION = 256;
+	/** Distances are capped at this, which exceeds any within the workspace */
+	public static final double MAX_DISTANCE = 2;
+	/** File name suffix of cached fields, appended to the problem file's name */
+	public static final String CACHE_SUFFIX = ".sdf";
+
+	/** Grid rows at most this many are computed without splitting */
+	private static final int GRAIN = 8;
+	/** Subtracted from lower bounds to cover rounding */
+	private static final double SLACK = 1e-12;
+	/** Identifies distance field cache files */
+	private static final int CACHE_MAGIC = 0x53444643;
+	/** Version of the distance field cache format */
+	private static final int CACHE_VERSION = 1;
+	/** Size in bytes of the distance field cache header */
+	private static final int CACHE_HEADER_SIZE = 20;
+
+	/** Number of cells along each side */
+	private int resolution;
+	/** Width and height of a cell */
+	private double spacing;
+	private double originX;
+	private double originY;
+	/** Signed distance at grid point (i, j), at [j * (resolution + 1) + i] */
+	private double[] values;
+	/** Lower bound of the signed distance over each cell, row by row */
+	private double[] cellBounds;
+
+	private DistanceField(int resolution) {
+		this.resolution = resolution;
+		Rectangle2D bounds = Tester.BOUNDS;
+		spacing = bounds.getWidth() / resolution;
+		originX = bounds.getMinX();
+		originY = bounds.getMinY();
+		values = new double[(resolution + 1) * (resolution + 1)];
+	}
+
+	/**
+	 * Computes the field for the given obstacles.
+	 *
+	 * @param obstacles
+	 *            the obstacles.
+	 * @param resolution
+	 *            the number of grid cells along each side of the workspace.
+	 * @param threads
+	 *            the number of threads to compute grid rows on.
+	 * @return the field.
+	 */
+	public static DistanceField build(List<Obstacle> obstacles,
+			final int resolution, int threads) {
+		final DistanceField field = new DistanceField(resolution);
+		final Rectangle2D[] rects = rectangles(obstacles);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new RangeTask(0, resolution + 1, GRAIN, new RangeBody() {
+				public void run(int lo, int hi) {
+					for (int j = lo; j < hi; j++) {
+						double y = field.originY + j * field.spacing;
+						for (int i = 0; i <= resolution; i++) {
+							double x = field.originX + i * field.spacing;
+							field.values[j * (resolution + 1) + i] = signedDistance(
+									rects, x, y);
+						}
+					}
+				}
+			}));
+		} finally {
+			pool.shutdown();
+		}
+		field.computeCellBounds();
+		return field;
+	}
+
+	/**
+	 * Returns the field for the obstacles after some were added, removed or
+	 * moved, computed from this one. A grid point's value can only change if
+	 * the point is inside a changed obstacle, or no farther from one than
+	 * from the nearest obstacle before; only those points are recomputed,
+	 * from all the new obstacles, so the result is the same as build's. If
+	 * half the obstacles or more changed, the field is simply rebuilt. This
+	 * field is left unchanged.
+	 *
+	 * @param obstacles
+	 *            the complete new set of obstacles.
+	 * @param added
+	 *            the obstacles in obstacles that are new.
+	 * @param removed
+	 *            the obstacles that are no longer present.
+	 * @param threads
+	 *            the number of threads to compute grid rows on.
+	 * @return the updated field.
+	 */
+	public DistanceField update(List<Obstacle> obstacles, List<Obstacle> added,
+			List<Obstacle> removed, int threads) {
+		if (2 * (added.size() + removed.size()) >= obstacles.size()) {
+			return build(obstacles, resolution, threads);
+		}
+		final DistanceField field = new DistanceField(resolution);
+		final Rectangle2D[] rects = rectangles(obstacles);
+		final Rectangle2D[] changed = new Rectangle2D[added.size()
+				+ removed.size()];
+		for (int o = 0; o < added.size(); o++) {
+			changed[o] = added.get(o).getRect();
+		}
+		for (int o = 0; o < removed.size(); o++) {
+			changed[added.size() + o] = removed.get(o).getRect();
+		}
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new RangeTask(0, resolution + 1, GRAIN, new RangeBody() {
+				public void run(int lo, int hi) {
+					for (int j = lo; j < hi; j++) {
+						double y = originY + j * spacing;
+						for (int i = 0; i <= resolution; i++) {
+							double x = originX + i * spacing;
+							int k = j * (resolution + 1) + i;
+							double reach = Math.max(values[k], 0);
+							field.values[k] = reaches(changed, x, y, reach)
+									? signedDistance(rects, x, y) : values[k];
+						}
+					}
+				}
+			}));
+		} finally {
+			pool.shutdown();
+		}
+		field.computeCellBounds();
+		return field;
+	}
+
+	/**
+	 * Returns the field for a problem, loading it from the given cache file
+	 * if it holds one for the same obstacles and resolution, and otherwise
+	 * building it and saving it there.
+	 *
+	 * @param ps
+	 *            the problem.
+	 * @param cacheFile
+	 *            the path of the cache file.
+	 * @param resolution
+	 *            the number of grid cells along each side of the workspace.
+	 * @param threads
+	 *            the number of threads to build the field with.
+	 * @return the field.
+	 * @throws IOException
+	 *             if an existing cache file is malformed, or the cache file
+	 *             cannot be written.
+	 */
+	public static DistanceField forProblem(ProblemSpec ps, String cacheFile,
+			int resolution, int threads) throws IOException {
+		List<Obstacle> obstacles = ps.getObstacles();
+		DistanceField field = load(cacheFile, obstacles, resolution);
+		if (field == null) {
+			field = build(obstacles, resolution, threads);
+			field.save(cacheFile, obstacles);
+		}
+		return field;
+	}
+
+	/**
+	 * Returns the number of grid cells along each side of the workspace.
+	 *
+	 * @return the resolution.
+	 */
+	public int getResolution() {
+		return resolution;
+	}
+
+	/**
+	 * Returns the signed distance at a point, interpolated bilinearly from
+	 * the grid. Points outside the workspace take the value at the nearest
+	 * point of the workspace. This is an estimate, accurate to within about
+	 * one cell width; use lowerBound where a guarantee is needed.
+	 *
+	 * @param x
+	 *            the x coordinate.
+	 * @param y
+	 *            the y coordinate.
+	 * @return the interpolated signed distance.
+	 */
+	public double distance(double x, double y) {
+		double fx = clamp((x - originX) / spacing);
+		double fy = clamp((y - originY) / spacing);
+		int i = Math.min((int) fx, resolution - 1);
+		int j = Math.min((int) fy, resolution - 1);
+		double tx = fx - i;
+		double ty = fy - j;
+		int k = j * (resolution + 1) + i;
+		double bottom = values[k] + tx * (values[k + 1] - values[k]);
+		double top = values[k + resolution + 1] + tx
+				* (values[k + resolution + 2] - values[k + resolution + 1]);
+		return bottom + ty * (top - bottom);
+	}
+
+	/**
+	 * Returns a lower bound on the signed distance of every point of the
+	 * segment from (x0, y0) to (x1, y1). If the bound is positive, the
+	 * segment doesn't touch any obstacle.
+	 *
+	 * @param x0
+	 *            the x coordinate of one end.
+	 * @param y0
+	 *            the y coordinate of one end.
+	 * @param x1
+	 *            the x coordinate of the other end.
+	 * @param y1
+	 *            the y coordinate of the other end.
+	 * @return a lower bound on the segment's clearance.
+	 */
+	public double lowerBound(double x0, double y0, double x1, double y1) {
+		// Split the segment into pieces no longer than a cell, so that the
+		// cells under each piece's bounding box are few and near it.
+		double length = Math.hypot(x1 - x0, y1 - y0);
+		int pieces = Math.max(1, (int) Math.ceil(length / spacing));
+		double bound = MAX_DISTANCE;
+		double ax = x0;
+		double ay = y0;
+		for (int p = 1; p <= pieces; p++) {
+			double bx = p == pieces ? x1 : x0 + (x1 - x0) * p / pieces;
+			double by = p == pieces ? y1 : y0 + (y1 - y0) * p / pieces;
+			bound = Math.min(bound, boxBound(Math.min(ax, bx), Math.min(ay, by),
+					Math.max(ax, bx), Math.max(ay, by)));
+			ax = bx;
+			ay = by;
+		}
+		return bound;
+	}
+
+	/**
+	 * Returns a lower bound on the signed distance at a point.
+	 *
+	 * @param x
+	 *            the x coordinate.
+	 * @param y
+	 *            the y coordinate.
+	 * @return a lower bound on the point's clearance.
+	 */
+	public double lowerBound(double x, double y) {
+		return boxBound(x, y, x, y);
+	}
+
+	/** Returns a lower bound on the signed distance over a box */
+	private double boxBound(double minX, double minY, double maxX, double maxY) {
+		// A point outside the workspace is bounded through the nearest point
+		// inside it, less the distance between them.
+		double outside = Math.max(0, Math.max(originX - minX, maxX - originX
+				- resolution * spacing))
+				+ Math.max(0, Math.max(originY - minY, maxY - originY
+						- resolution * spacing));
+		int i0 = cell(minX - originX);
+		int i1 = cell(maxX - originX);
+		int j0 = cell(minY - originY);
+		int j1 = cell(maxY - originY);
+		double bound = MAX_DISTANCE;
+		for (int j = j0; j <= j1; j++) {
+			for (int i = i0; i <= i1; i++) {
+				bound = Math.min(bound, cellBounds[j * resolution + i]);
+			}
+		}
+		return bound - outside;
+	}
+
+	/**
+	 * Saves the field to a binary cache file: a header with the resolution
+	 * and a hash of the obstacles, followed by the grid values as packed
+	 * doubles.
+	 *
+	 * @param filename
+	 *            the path of the file to write.
+	 * @param obstacles
+	 *            the obstacles the field was built for.
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	public void save(String filename, List<Obstacle> obstacles)
+			throws IOException {
+		long size = CACHE_HEADER_SIZE + 8L * values.length;
+		FileChannel channel = FileChannel.open(Paths.get(filename),
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buf.putInt(CACHE_MAGIC);
+			buf.putInt(CACHE_VERSION);
+			buf.putInt(resolution);
+			buf.putLong(PRM.environmentHash(obstacles, 0));
+			buf.asDoubleBuffer().put(values);
+			buf.force();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Loads a field saved by save, if it was built for the same obstacles and
+	 * resolution.
+	 *
+	 * @param filename
+	 *            the path of the cache file.
+	 * @param obstacles
+	 *            the obstacles the field must have been built for.
+	 * @param resolution
+	 *            the resolution the field must have.
+	 * @return the field, or null if the file does not exist or belongs to
+	 *         different obstacles or another resolution.
+	 * @throws IOException
+	 *             if the file cannot be read or is malformed.
+	 */
+	public static DistanceField load(String filename, List<Obstacle> obstacles,
+			int resolution) throws IOException {
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+		try {
+			if (channel.size() < CACHE_HEADER_SIZE) {
+				throw new IOException("Distance field cache file is truncated.");
+			}
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+			if (buf.getInt() != CACHE_MAGIC || buf.getInt() != CACHE_VERSION) {
+				throw new IOException("Not a distance field cache file: "
+						+ filename);
+			}
+			if (buf.getInt() != resolution
+					|| buf.getLong() != PRM.environmentHash(obstacles, 0)) {
+				return null;
+			}
+			DistanceField field = new DistanceField(resolution);
+			if (channel.size() != CACHE_HEADER_SIZE + 8L * field.values.length) {
+				throw new IOException("Distance field cache file is truncated.");
+			}
+			buf.asDoubleBuffer().get(field.values);
+			field.computeCellBounds();
+			return field;
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Bounds each cell by its least corner value less the distance from the
+	 * cell's farthest point to its nearest corner, half a cell diagonal.
+	 */
+	private void computeCellBounds() {
+		cellBounds = new double[resolution * resolution];
+		double reach = spacing * Math.sqrt(2) / 2 + SLACK;
+		for (int j = 0; j < resolution; j++) {
+			for (int i = 0; i < resolution; i++) {
+				int k = j * (resolution + 1) + i;
+				double least = Math.min(Math.min(values[k], values[k + 1]),
+						Math.min(values[k + resolution + 1],
+								values[k + resolution + 2]));
+				cellBounds[j * resolution + i] = least - reach;
+			}
+		}
+	}
+
+	/** Returns the cell index of an offset from the origin, clamped */
+	private int cell(double offset) {
+		int i = (int) Math.floor(offset / spacing);
+		return Math.max(0, Math.min(resolution - 1, i));
+	}
+
+	/** Clamps a grid coordinate to [0, resolution] */
+	private double clamp(double f) {
+		return Math.max(0, Math.min(resolution, f));
+	}
+
+	/** Returns the rectangles of the obstacles */
+	private static Rectangle2D[] rectangles(List<Obstacle> obstacles) {
+		Rectangle2D[] rects = new Rectangle2D[obstacles.size()];
+		for (int o = 0; o < rects.length; o++) {
+			rects[o] = obstacles.get(o).getRect();
+		}
+		return rects;
+	}
+
+	/**
+	 * Returns whether any of the rectangles contains the point or is within
+	 * the given distance of it
+	 */
+	private static boolean reaches(Rectangle2D[] rects, double x, double y,
+			double distance) {
+		for (Rectangle2D rect : rects) {
+			double dx = Math.max(Math.max(rect.getMinX() - x, x - rect.getMaxX()), 0);
+			double dy = Math.max(Math.max(rect.getMinY() - y, y - rect.getMaxY()), 0);
+			if (Math.hypot(dx, dy) <= distance) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Returns the exact signed distance from a point to the rectangles */
+	private static double signedDistance(Rectangle2D[] rects, double x, double y) {
+		double outside = MAX_DISTANCE;
+		double depth = 0;
+		boolean inside = false;
+		for (Rectangle2D rect : rects) {
+			double dx = Math.max(rect.getMinX() - x, x - rect.getMaxX());
+			double dy = Math.max(rect.getMinY() - y, y - rect.getMaxY());
+			if (dx <= 0 && dy <= 0) {
+				inside = true;
+				depth = Math.max(depth, Math.min(-dx, -dy));
+			} else {
+				outside = Math.min(outside, Math.hypot(Math.max(dx, 0),
+						Math.max(dy, 0)));
+			}
+		}
+		return inside ? -depth : outside;
+	}
+}
@@ -0,0 +1,247 @@
+package algorithm;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of int ids in [0, capacity) keyed by doubles. Each id is in
+ * the heap at most once and its position is tracked, so keys can be
+ * decreased in O(log n) without duplicate entries. Nothing is allocated
+ * after construction unless the capacity has to grow.
+ *
+ * Entries may also carry a secondary key that breaks ties between equal
+ * primary keys, giving the lexicographic ordering incremental searches
+ * such as LPA* need.
+ */
+public class IndexedHeap {
+	/** Ids in heap order */
+	private int[] heap;
+	/** Key of each heap slot, parallel to heap */
+	private double[] keys;
+	/** Secondary key of each heap slot, parallel to heap */
+	private double[] ties;
+	/** Heap slot of each id, or -1 if the id is not in the heap */
+	private int[] pos;
+	/** Number of ids in the heap */
+	private int size;
+
+	/**
+	 * Constructs an empty heap.
+	 *
+	 * @param capacity
+	 *            one more than the largest id that will be stored.
+	 */
+	public IndexedHeap(int capacity) {
+		heap = new int[capacity];
+		keys = new double[capacity];
+		ties = new double[capacity];
+		pos = new int[capacity];
+		Arrays.fill(pos, -1);
+	}
+
+	/**
+	 * Grows the heap so that it can hold ids below the given capacity.
+	 *
+	 * @param capacity
+	 *            the required capacity.
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity <= pos.length) {
+			return;
+		}
+		int old = pos.length;
+		heap = Arrays.copyOf(heap, capacity);
+		keys = Arrays.copyOf(keys, capacity);
+		ties = Arrays.copyOf(ties, capacity);
+		pos = Arrays.copyOf(pos, capacity);
+		Arrays.fill(pos, old, capacity, -1);
+	}
+
+	/**
+	 * Returns whether the heap is empty.
+	 *
+	 * @return whether the heap is empty.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the number of ids in the heap.
+	 *
+	 * @return the number of ids in the heap.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns whether the given id is in the heap.
+	 *
+	 * @param id
+	 *            the id.
+	 * @return whether the id is in the heap.
+	 */
+	public boolean contains(int id) {
+		return pos[id] >= 0;
+	}
+
+	/**
+	 * Inserts an id, or changes its key if it is already in the heap.
+	 *
+	 * @param id
+	 *            the id.
+	 * @param key
+	 *            the new key.
+	 */
+	public void push(int id, double key) {
+		push(id, key, 0);
+	}
+
+	/**
+	 * Inserts an id, or changes its keys if it is already in the heap.
+	 *
+	 * @param id
+	 *            the id.
+	 * @param key
+	 *            the new primary key.
+	 * @param tie
+	 *            the new secondary key, compared only when primary keys are
+	 *            equal.
+	 */
+	public void push(int id, double key, double tie) {
+		int i = pos[id];
+		if (i < 0) {
+			i = size++;
+			place(id, key, tie, i);
+			siftUp(i);
+		} else if (less(key, tie, keys[i], ties[i])) {
+			place(id, key, tie, i);
+			siftUp(i);
+		} else {
+			place(id, key, tie, i);
+			siftDown(i);
+		}
+	}
+
+	/**
+	 * Returns the smallest key in the heap. The heap must not be empty.
+	 *
+	 * @return the smallest key.
+	 */
+	public double peekKey() {
+		return keys[0];
+	}
+
+	/**
+	 * Returns the secondary key of the smallest entry. The heap must not be
+	 * empty.
+	 *
+	 * @return the secondary key of the smallest entry.
+	 */
+	public double peekTie() {
+		return ties[0];
+	}
+
+	/**
+	 * Removes and returns the id with the smallest key. The heap must not be
+	 * empty.
+	 *
+	 * @return the id with the smallest key.
+	 */
+	public int pop() {
+		int top = heap[0];
+		pos[top] = -1;
+		size--;
+		if (size > 0) {
+			place(heap[size], keys[size], ties[size], 0);
+			siftDown(0);
+		}
+		return top;
+	}
+
+	/**
+	 * Removes the given id if it is in the heap.
+	 *
+	 * @param id
+	 *            the id to remove.
+	 */
+	public void remove(int id) {
+		int i = pos[id];
+		if (i < 0) {
+			return;
+		}
+		pos[id] = -1;
+		size--;
+		if (i < size) {
+			int moved = heap[size];
+			place(moved, keys[size], ties[size], i);
+			siftUp(i);
+			if (pos[moved] == i) {
+				siftDown(i);
+			}
+		}
+	}
+
+	/**
+	 * Removes every id, in time proportional to the current size.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			pos[heap[i]] = -1;
+		}
+		size = 0;
+	}
+
+	private void siftUp(int i) {
+		int id = heap[i];
+		double key = keys[i];
+		double tie = ties[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!less(key, tie, keys[parent], ties[parent])) {
+				break;
+			}
+			move(parent, i);
+			i = parent;
+		}
+		place(id, key, tie, i);
+	}
+
+	private void siftDown(int i) {
+		int id = heap[i];
+		double key = keys[i];
+		double tie = ties[i];
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < size
+					&& less(keys[child + 1], ties[child + 1], keys[child], ties[child])) {
+				child++;
+			}
+			if (!less(keys[child], ties[child], key, tie)) {
+				break;
+			}
+			move(child, i);
+			i = child;
+		}
+		place(id, key, tie, i);
+	}
+
+	private static boolean less(double key0, double tie0, double key1, double tie1) {
+		return key0 < key1 || (key0 == key1 && tie0 < tie1);
+	}
+
+	private void move(int from, int to) {
+		heap[to] = heap[from];
+		keys[to] = keys[from];
+		ties[to] = ties[from];
+		pos[heap[to]] = to;
+	}
+
+	private void place(int id, double key, double tie, int i) {
+		heap[i] = id;
+		keys[i] = key;
+		ties[i] = tie;
+		pos[id] = i;
+	}
+}
@@ -0,0 +1,387 @@
+package algorithm;
+
+import java.util.Arrays;
+
+import problem.ArmConfig;
+
+/**
+ * k-d tree over points in arm configuration space: base x, base y, then one
+ * coordinate per joint angle. Each dimension is multiplied by a scale factor
+ * before distances are taken, so that nearness matches how far the arm
+ * actually moves. Points are identified by int ids assigned in insertion
+ * order.
+ *
+ * The tree can be bulk-loaded into a balanced shape and extended with
+ * single insertions afterwards. Queries may run concurrently with each other
+ * but not with insertions.
+ */
+public class KdTree {
+	/** Number of dimensions */
+	private int dim;
+	/** Scale factor for each dimension */
+	private double[] scale;
+	/** Scaled coordinates of point i at [i * dim, (i + 1) * dim) */
+	private double[] coords;
+	/** Left child of each point, or -1 */
+	private int[] left;
+	/** Right child of each point, or -1 */
+	private int[] right;
+	/** Splitting dimension of each point */
+	private int[] splitDim;
+	/** Id of the root point, or -1 if the tree is empty */
+	private int root = -1;
+	/** Number of points */
+	private int size;
+
+	/**
+	 * Constructs an empty tree.
+	 *
+	 * @param scale
+	 *            the scale factor for each dimension.
+	 */
+	public KdTree(double[] scale) {
+		this.dim = scale.length;
+		this.scale = scale.clone();
+		allocate(16);
+	}
+
+	/**
+	 * Returns the scale factors for an arm with the given number of joints.
+	 * The base coordinates are unscaled and each joint angle is scaled by the
+	 * length of the chain beyond that joint, which is how far a unit rotation
+	 * moves the arm's tip. This is the bound CollisionChecker.motionBound
+	 * uses, and matches the endpoint distances of ArmConfig.maxDistance.
+	 *
+	 * @param jointCount
+	 *            the number of joints.
+	 * @return the scale factor for each of the 2 + jointCount dimensions.
+	 */
+	public static double[] armScale(int jointCount) {
+		double[] scale = new double[2 + jointCount];
+		scale[0] = 1;
+		scale[1] = 1;
+		for (int i = 0; i < jointCount; i++) {
+			scale[2 + i] = ArmConfig.LINK_LENGTH * (jointCount - i);
+		}
+		return scale;
+	}
+
+	/**
+	 * Returns the configuration space point of a configuration, in the
+	 * layout this tree expects.
+	 *
+	 * @param cfg
+	 *            the configuration.
+	 * @return base x, base y and the joint angles.
+	 */
+	public static double[] coordinates(ArmConfig cfg) {
+		double[] point = new double[2 + cfg.getJointCount()];
+		point[0] = cfg.baseX();
+		point[1] = cfg.baseY();
+		for (int i = 0; i < cfg.getJointCount(); i++) {
+			point[2 + i] = cfg.angle(i);
+		}
+		return point;
+	}
+
+	/**
+	 * Replaces the contents of the tree with the given points, arranged as a
+	 * balanced tree. Point i gets id i.
+	 *
+	 * @param points
+	 *            the unscaled points.
+	 */
+	public void build(double[][] points) {
+		size = 0;
+		root = -1;
+		allocate(Math.max(points.length, 16));
+		for (double[] p : points) {
+			store(p);
+		}
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		root = build(order, 0, size);
+	}
+
+	/**
+	 * Inserts a point below the existing ones, without rebalancing.
+	 *
+	 * @param point
+	 *            the unscaled point.
+	 * @return the id of the new point.
+	 */
+	public int insert(double[] point) {
+		int id = store(point);
+		if (root < 0) {
+			root = id;
+			splitDim[id] = 0;
+			return id;
+		}
+		int node = root;
+		while (true) {
+			int d = splitDim[node];
+			boolean goLeft = coords[id * dim + d] < coords[node * dim + d];
+			int child = goLeft ? left[node] : right[node];
+			if (child < 0) {
+				if (goLeft) {
+					left[node] = id;
+				} else {
+					right[node] = id;
+				}
+				splitDim[id] = (d + 1) % dim;
+				return id;
+			}
+			node = child;
+		}
+	}
+
+	/**
+	 * Returns the number of points in the tree.
+	 *
+	 * @return the number of points in the tree.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the ids of the k points nearest to the query point, nearest
+	 * first. Fewer are returned if the tree holds fewer than k points.
+	 *
+	 * @param query
+	 *            the unscaled query point.
+	 * @param k
+	 *            the number of neighbours.
+	 * @return the ids of the nearest points.
+	 */
+	public int[] nearest(double[] query, int k) {
+		k = Math.min(k, size);
+		if (k == 0) {
+			return new int[0];
+		}
+		NearestSearch search = new NearestSearch(scaled(query), k);
+		search.visit(root);
+		return Arrays.copyOf(search.ids, search.found);
+	}
+
+	/**
+	 * Returns the ids of all points within the given scaled distance of the
+	 * query point, in no particular order.
+	 *
+	 * @param query
+	 *            the unscaled query point.
+	 * @param radius
+	 *            the search radius in scaled units.
+	 * @return the ids of the points within the radius.
+	 */
+	public int[] withinRadius(double[] query, double radius) {
+		double[] q = scaled(query);
+		double r2 = radius * radius;
+		int[] result = new int[16];
+		int count = 0;
+		int[] stack = new int[64];
+		int top = 0;
+		if (root >= 0) {
+			stack[top++] = root;
+		}
+		while (top > 0) {
+			int node = stack[--top];
+			if (distanceSq(q, node) <= r2) {
+				if (count == result.length) {
+					result = Arrays.copyOf(result, count * 2);
+				}
+				result[count++] = node;
+			}
+			int d = splitDim[node];
+			double diff = q[d] - coords[node * dim + d];
+			int near = diff < 0 ? left[node] : right[node];
+			int far = diff < 0 ? right[node] : left[node];
+			if (top + 2 > stack.length) {
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			if (far >= 0 && diff * diff <= r2) {
+				stack[top++] = far;
+			}
+			if (near >= 0) {
+				stack[top++] = near;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * Returns the scaled Euclidean distance between two unscaled points.
+	 *
+	 * @param a
+	 *            a point.
+	 * @param b
+	 *            another point.
+	 * @return the scaled distance between them.
+	 */
+	public double distance(double[] a, double[] b) {
+		double sum = 0;
+		for (int d = 0; d < dim; d++) {
+			double diff = (a[d] - b[d]) * scale[d];
+			sum += diff * diff;
+		}
+		return Math.sqrt(sum);
+	}
+
+	/** Builds a balanced subtree from order[lo, hi) and returns its root */
+	private int build(int[] order, int lo, int hi) {
+		if (lo >= hi) {
+			return -1;
+		}
+		int d = widestDimension(order, lo, hi);
+		int mid = (lo + hi) >>> 1;
+		select(order, lo, hi - 1, mid, d);
+		int node = order[mid];
+		splitDim[node] = d;
+		left[node] = build(order, lo, mid);
+		right[node] = build(order, mid + 1, hi);
+		return node;
+	}
+
+	/** Returns the dimension with the largest spread over order[lo, hi) */
+	private int widestDimension(int[] order, int lo, int hi) {
+		int best = 0;
+		double bestSpread = -1;
+		for (int d = 0; d < dim; d++) {
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = lo; i < hi; i++) {
+				double v = coords[order[i] * dim + d];
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+			}
+			if (max - min > bestSpread) {
+				bestSpread = max - min;
+				best = d;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Partially sorts order[lo, hi] along dimension d so that position k
+	 * holds the element that would be there if fully sorted, with smaller
+	 * elements before it and larger ones after.
+	 */
+	private void select(int[] order, int lo, int hi, int k, int d) {
+		while (hi > lo) {
+			double pivot = coords[order[(lo + hi) >>> 1] * dim + d];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (coords[order[i] * dim + d] < pivot) {
+					i++;
+				}
+				while (coords[order[j] * dim + d] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int t = order[i];
+					order[i++] = order[j];
+					order[j--] = t;
+				}
+			}
+			if (k <= j) {
+				hi = j;
+			} else if (k >= i) {
+				lo = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/** Appends a point's scaled coordinates and returns its id */
+	private int store(double[] point) {
+		if (size == left.length) {
+			allocate(size * 2);
+		}
+		int id = size++;
+		for (int d = 0; d < dim; d++) {
+			coords[id * dim + d] = point[d] * scale[d];
+		}
+		left[id] = -1;
+		right[id] = -1;
+		return id;
+	}
+
+	private void allocate(int capacity) {
+		if (coords == null) {
+			coords = new double[capacity * dim];
+			left = new int[capacity];
+			right = new int[capacity];
+			splitDim = new int[capacity];
+		} else if (capacity > left.length) {
+			coords = Arrays.copyOf(coords, capacity * dim);
+			left = Arrays.copyOf(left, capacity);
+			right = Arrays.copyOf(right, capacity);
+			splitDim = Arrays.copyOf(splitDim, capacity);
+		}
+	}
+
+	private double[] scaled(double[] point) {
+		double[] q = new double[dim];
+		for (int d = 0; d < dim; d++) {
+			q[d] = point[d] * scale[d];
+		}
+		return q;
+	}
+
+	private double distanceSq(double[] q, int node) {
+		double sum = 0;
+		int base = node * dim;
+		for (int d = 0; d < dim; d++) {
+			double diff = q[d] - coords[base + d];
+			sum += diff * diff;
+		}
+		return sum;
+	}
+
+	/** State of one k-nearest query: a sorted list of the best k so far */
+	private class NearestSearch {
+		final double[] q;
+		final int[] ids;
+		final double[] distSq;
+		int found;
+
+		NearestSearch(double[] q, int k) {
+			this.q = q;
+			this.ids = new int[k];
+			this.distSq = new double[k];
+		}
+
+		void visit(int node) {
+			if (node < 0) {
+				return;
+			}
+			offer(node, distanceSq(q, node));
+			int d = splitDim[node];
+			double diff = q[d] - coords[node * dim + d];
+			visit(diff < 0 ? left[node] : right[node]);
+			if (found < ids.length || diff * diff < distSq[found - 1]) {
+				visit(diff < 0 ? right[node] : left[node]);
+			}
+		}
+
+		void offer(int node, double d) {
+			int k = ids.length;
+			if (found == k && d >= distSq[k - 1]) {
+				return;
+			}
+			int pos = found < k ? found++ : k - 1;
+			while (pos > 0 && distSq[pos - 1] > d) {
+				ids[pos] = ids[pos - 1];
+				distSq[pos] = distSq[pos - 1];
+				pos--;
+			}
+			ids[pos] = node;
+			distSq[pos] = d;
+		}
+	}
+}
@@ -1,21 +1,944 @@
 package algorithm;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.awt.geom.*;
-import problem.*;
 import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import problem.*;
+import tester.Tester;
 
+/**
+ * Probabilistic roadmap over arm configurations. Node 0 is the initial state
+ * and node 1 the goal state of the problem; the remaining nodes are random
+ * valid samples. Each node is connected to its nearest neighbours, found
+ * with a KdTree, wherever the straight-line motion between them is valid.
+ * Edge costs are ArmConfig.totalDistance.
+ *
+ * Sampling, neighbour search and edge validation are split over a
+ * ForkJoinPool with a configurable number of threads.
+ *
+ * Otherwise createMap checks each candidate edge at the checker's
+ * resolution, and findPath checks the primitive steps of the edges on the
+ * best path, removing invalid ones and searching again until a path the
+ * tester accepts is found. In lazy mode createMap adds candidate edges
+ * without checking them, and findPath runs both checks on the edges of the
+ * best path.
+ *
+ * A built roadmap can be saved to a binary cache file and loaded again for
+ * the same obstacles and joint count, skipping construction entirely.
+ */
 public class PRM {
-	
+	/** Default number of random samples in the roadmap */
+	public static final int DEFAULT_SAMPLES = 1000;
+	/** Default number of nearest neighbours each node tries to connect to */
+	public static final int DEFAULT_NEIGHBOURS = 10;
+	/** Index ranges at most this long are processed without splitting */
+	private static final int GRAIN = 64;
+
+	/** Edge state: not yet validated */
+	static final byte UNCHECKED = 0;
+	/** Edge state: validated and free */
+	static final byte VALID = 1;
+	/** Edge state: validated and blocked */
+	static final byte INVALID = 2;
+	/** Edge state: free at the checker's resolution, primitive steps unchecked */
+	static final byte COARSE = 3;
+
+	/** Identifies roadmap cache files */
+	private static final int CACHE_MAGIC = 0x50524D43;
+	/** Version of the roadmap cache format */
+	private static final int CACHE_VERSION = 2;
+	/** Size in bytes of the roadmap cache header */
+	private static final int CACHE_HEADER_SIZE = 36;
+
+	/** The problem being solved */
+	private ProblemSpec ps;
+	/** The obstacles the roadmap is valid for */
+	private List<Obstacle> obstacles;
+	/** Validity checks for states and edges */
+	private CollisionChecker checker;
+	/** Number of random samples */
+	private int sampleCount = DEFAULT_SAMPLES;
+	/** Number of nearest neighbours to connect to */
+	private int neighbourCount = DEFAULT_NEIGHBOURS;
+	/** Number of worker threads */
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+	/** Seed for the sampler */
+	private long seed = System.nanoTime();
+	/** Whether edge validation is deferred until search */
+	private boolean lazy = false;
+	/** Memory cap of the collision cache in bytes, or 0 for no cache */
+	private long cacheBytes = 0;
+	/** Whether samples are on the joint step grid, with TrigTable kinematics */
+	private boolean tableTrig = false;
+
+	/** Roadmap nodes */
+	private ConfigStore nodes;
+	/** Id of the node at the initial state */
+	private int startId;
+	/** Id of the node at the goal state */
+	private int goalId;
+	/** Nearest-neighbour index over the nodes, or null until needed */
+	private KdTree tree;
+	/** Joint positions of each node, or null until needed */
+	private double[][] armPoints;
+	/** Neighbouring node ids for each node */
+	private int[][] neighbours;
+	/** Edge costs, parallel to neighbours */
+	private double[][] edgeCosts;
+	/** Edge validation states, parallel to neighbours */
+	private byte[][] edgeStates;
+
+	/**
+	 * Constructs an empty roadmap for the given problem.
+	 *
+	 * @param ps
+	 *            the problem, which must have been loaded.
+	 */
+	public PRM(ProblemSpec ps) {
+		this.ps = ps;
+		this.obstacles = ps.getObstacles();
+		this.checker = new CollisionChecker(ps);
+	}
+
+	/**
+	 * Builds the roadmap: samples valid configurations, finds the nearest
+	 * neighbours of every node and keeps the edges whose motion is valid. In
+	 * lazy mode every candidate edge is kept unchecked.
+	 */
 	public void createMap() {
-		
-		
-		
-		
-		
+		ForkJoinPool pool = new ForkJoinPool(threadCount);
+		try {
+			final int n = sampleCount + 2;
+			int jointCount = ps.getInitialState().getJointCount();
+			final int stride = 2 + jointCount;
+			final double[] coords = new double[n * stride];
+			System.arraycopy(KdTree.coordinates(ps.getInitialState()), 0, coords, 0,
+					stride);
+			System.arraycopy(KdTree.coordinates(ps.getGoalState()), 0, coords, stride,
+					stride);
+			pool.invoke(new RangeTask(2, n, GRAIN, new RangeBody() {
+				public void run(int lo, int hi) {
+					Random random = new Random(seed ^ (lo * 0x9E3779B97F4A7C15L));
+					for (int i = lo; i < hi; i++) {
+						System.arraycopy(KdTree.coordinates(sample(random)), 0,
+								coords, i * stride, stride);
+					}
+				}
+			}));
+			nodes = new ConfigStore(jointCount, n);
+			nodes.setTableTrig(tableTrig);
+			nodes.addAll(coords, n);
+			startId = 0;
+			goalId = 1;
+			armPoints = null;
+
+			final double[][] points = new double[n][];
+			for (int i = 0; i < n; i++) {
+				points[i] = nodes.coordinates(i);
+			}
+			final KdTree tree = new KdTree(KdTree.armScale(jointCount));
+			tree.build(points);
+			this.tree = tree;
+
+			final int[][] candidates = new int[n][];
+			pool.invoke(new RangeTask(0, n, GRAIN, new RangeBody() {
+				public void run(int lo, int hi) {
+					for (int i = lo; i < hi; i++) {
+						candidates[i] = nearest(tree, points[i], i);
+					}
+				}
+			}));
+
+			// Each undirected edge is validated by exactly one task: the lower
+			// id if both ends list each other, otherwise the end that lists it.
+			final boolean[][] valid = new boolean[n][];
+			pool.invoke(new RangeTask(0, n, GRAIN, new RangeBody() {
+				public void run(int lo, int hi) {
+					for (int i = lo; i < hi; i++) {
+						valid[i] = new boolean[candidates[i].length];
+						ArmConfig cfg = lazy ? null : nodes.toConfig(i);
+						for (int k = 0; k < candidates[i].length; k++) {
+							int j = candidates[i][k];
+							if (i < j || !contains(candidates[j], i)) {
+								valid[i][k] = lazy || checker.isValidEdge(cfg,
+										nodes.toConfig(j));
+							}
+						}
+					}
+				}
+			}));
+
+			int[] degree = new int[n];
+			for (int i = 0; i < n; i++) {
+				for (int k = 0; k < candidates[i].length; k++) {
+					if (valid[i][k]) {
+						degree[i]++;
+						degree[candidates[i][k]]++;
+					}
+				}
+			}
+			neighbours = new int[n][];
+			edgeCosts = new double[n][];
+			edgeStates = new byte[n][];
+			byte state = lazy ? UNCHECKED : COARSE;
+			for (int i = 0; i < n; i++) {
+				neighbours[i] = new int[degree[i]];
+				edgeCosts[i] = new double[degree[i]];
+				edgeStates[i] = new byte[degree[i]];
+				Arrays.fill(edgeStates[i], state);
+				degree[i] = 0;
+			}
+			for (int i = 0; i < n; i++) {
+				for (int k = 0; k < candidates[i].length; k++) {
+					if (valid[i][k]) {
+						int j = candidates[i][k];
+						double cost = nodes.totalDistance(i, j);
+						neighbours[i][degree[i]] = j;
+						edgeCosts[i][degree[i]++] = cost;
+						neighbours[j][degree[j]] = i;
+						edgeCosts[j][degree[j]++] = cost;
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Finds a path from the initial state to the goal state.
+	 *
+	 * @return the configurations of the roadmap nodes on the path, or null if
+	 *         the roadmap does not connect them.
+	 */
+	public List<ArmConfig> findPath() {
+		return findPath(startId, goalId);
+	}
+
+	/**
+	 * Finds a path between two roadmap nodes with A*. Edges on the best path
+	 * whose primitive steps have not been checked yet are validated; if any
+	 * turns out to be blocked it is removed from the search and the search
+	 * is repeated.
+	 *
+	 * @param start
+	 *            the id of the start node.
+	 * @param goal
+	 *            the id of the goal node.
+	 * @return the configurations of the roadmap nodes on the path, or null if
+	 *         the roadmap does not connect them.
+	 */
+	public List<ArmConfig> findPath(int start, int goal) {
+		return findPath(start, goal, new Astar(this));
+	}
+
+	/**
+	 * Finds a path between two roadmap nodes using the given search context,
+	 * as findPath(int, int) does.
+	 *
+	 * @param start
+	 *            the id of the start node.
+	 * @param goal
+	 *            the id of the goal node.
+	 * @param astar
+	 *            a search context over this roadmap.
+	 * @return the configurations of the roadmap nodes on the path, or null if
+	 *         the roadmap does not connect them.
+	 */
+	public List<ArmConfig> findPath(int start, int goal, Astar astar) {
+		while (true) {
+			int[] path = astar.search(start, goal);
+			if (path == null) {
+				return null;
+			}
+			int i = 1;
+			while (i < path.length && validateEdge(path[i - 1], path[i])) {
+				i++;
+			}
+			if (i == path.length) {
+				List<ArmConfig> result = new ArrayList<ArmConfig>(path.length);
+				for (int id : path) {
+					result.add(nodes.toConfig(id));
+				}
+				return result;
+			}
+		}
+	}
+
+	/**
+	 * Adds a configuration to the roadmap and connects it to its nearest
+	 * neighbours. The new edges are checked at the checker's resolution, or
+	 * left unchecked in lazy mode.
+	 *
+	 * @param cfg
+	 *            the configuration, which should be valid.
+	 * @return the id of the new node.
+	 */
+	public int addNode(ArmConfig cfg) {
+		if (tree == null) {
+			double[][] points = new double[nodes.size()][];
+			for (int i = 0; i < nodes.size(); i++) {
+				points[i] = nodes.coordinates(i);
+			}
+			tree = new KdTree(KdTree.armScale(cfg.getJointCount()));
+			tree.build(points);
+		}
+		double[] point = KdTree.coordinates(cfg);
+		int id = nodes.add(point);
+		if (id == neighbours.length) {
+			int capacity = Math.max(id * 2, 2);
+			neighbours = Arrays.copyOf(neighbours, capacity);
+			edgeCosts = Arrays.copyOf(edgeCosts, capacity);
+			edgeStates = Arrays.copyOf(edgeStates, capacity);
+		}
+		neighbours[id] = new int[0];
+		edgeCosts[id] = new double[0];
+		edgeStates[id] = new byte[0];
+		tree.insert(point);
+		for (int j : nearest(tree, point, id)) {
+			if (lazy) {
+				addEdge(id, j, UNCHECKED);
+			} else if (checker.isValidEdge(cfg, nodes.toConfig(j))) {
+				addEdge(id, j, COARSE);
+			}
+		}
+		return id;
+	}
+
+	/** Adds an undirected edge between nodes i and j */
+	private void addEdge(int i, int j, byte state) {
+		double cost = nodes.totalDistance(i, j);
+		appendEntry(i, j, cost, state);
+		appendEntry(j, i, cost, state);
+	}
+
+	private void appendEntry(int i, int j, double cost, byte state) {
+		int k = neighbours[i].length;
+		neighbours[i] = Arrays.copyOf(neighbours[i], k + 1);
+		edgeCosts[i] = Arrays.copyOf(edgeCosts[i], k + 1);
+		edgeStates[i] = Arrays.copyOf(edgeStates[i], k + 1);
+		neighbours[i][k] = j;
+		edgeCosts[i][k] = cost;
+		edgeStates[i][k] = state;
 	}
-	
-	
-	
 
+	/**
+	 * Saves the roadmap to a binary cache file. The file holds a header with
+	 * the joint count and a hash of the obstacles, the node coordinates as
+	 * packed doubles, and the edges in compressed sparse row form: per-node
+	 * offsets followed by the target, cost and validation state of every
+	 * adjacency entry.
+	 *
+	 * @param filename
+	 *            the path of the file to write.
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	public void saveMap(String filename) throws IOException {
+		int nodeCount = nodes.size();
+		int jointCount = nodes.getJointCount();
+		int stride = nodes.getStride();
+		int entryCount = 0;
+		for (int i = 0; i < nodeCount; i++) {
+			entryCount += neighbours[i].length;
+		}
+		long size = CACHE_HEADER_SIZE + 8L * nodeCount * stride
+				+ 4L * (nodeCount + 1) + 13L * entryCount;
+		FileChannel channel = FileChannel.open(Paths.get(filename),
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buf.putInt(CACHE_MAGIC);
+			buf.putInt(CACHE_VERSION);
+			buf.putInt(jointCount);
+			buf.putLong(environmentHash(obstacles, jointCount));
+			buf.putInt(nodeCount);
+			buf.putInt(entryCount);
+			buf.putInt(startId);
+			buf.putInt(goalId);
+			buf.asDoubleBuffer().put(nodes.rawCoordinates(), 0, nodeCount * stride);
+			buf.position(buf.position() + 8 * nodeCount * stride);
+			int offset = 0;
+			for (int i = 0; i < nodeCount; i++) {
+				buf.putInt(offset);
+				offset += neighbours[i].length;
+			}
+			buf.putInt(offset);
+			for (int i = 0; i < nodeCount; i++) {
+				for (int j : neighbours[i]) {
+					buf.putInt(j);
+				}
+			}
+			for (int i = 0; i < nodeCount; i++) {
+				for (double c : edgeCosts[i]) {
+					buf.putDouble(c);
+				}
+			}
+			for (int i = 0; i < nodeCount; i++) {
+				buf.put(edgeStates[i]);
+			}
+			buf.force();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Loads a roadmap saved by saveMap, if it was built for the same
+	 * obstacles and joint count as this problem. If the cached roadmap was
+	 * built for different initial or goal states, the current ones are added
+	 * to it as new nodes.
+	 *
+	 * @param filename
+	 *            the path of the cache file.
+	 * @return true if the roadmap was loaded; false if the file does not
+	 *         exist or belongs to a different environment.
+	 * @throws IOException
+	 *             if the file cannot be read or is malformed.
+	 */
+	public boolean loadMap(String filename) throws IOException {
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			return false;
+		}
+		try {
+			if (channel.size() < CACHE_HEADER_SIZE) {
+				throw new IOException("Roadmap cache file is truncated.");
+			}
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+			if (buf.getInt() != CACHE_MAGIC || buf.getInt() != CACHE_VERSION) {
+				throw new IOException("Not a roadmap cache file: " + filename);
+			}
+			int jointCount = buf.getInt();
+			long hash = buf.getLong();
+			if (jointCount != ps.getInitialState().getJointCount()
+					|| hash != environmentHash(obstacles, jointCount)) {
+				return false;
+			}
+			int n = buf.getInt();
+			int entryCount = buf.getInt();
+			int start = buf.getInt();
+			int goal = buf.getInt();
+			int stride = 2 + jointCount;
+			if (channel.size() != CACHE_HEADER_SIZE + 8L * n * stride
+					+ 4L * (n + 1) + 13L * entryCount) {
+				throw new IOException("Roadmap cache file is truncated.");
+			}
+			ConfigStore loadedNodes = new ConfigStore(jointCount, n);
+			loadedNodes.setTableTrig(tableTrig);
+			double[] coords = new double[n * stride];
+			buf.asDoubleBuffer().get(coords);
+			buf.position(buf.position() + 8 * coords.length);
+			loadedNodes.addAll(coords, n);
+			int[] offsets = new int[n + 1];
+			buf.asIntBuffer().get(offsets);
+			buf.position(buf.position() + 4 * offsets.length);
+			int[] targets = new int[entryCount];
+			buf.asIntBuffer().get(targets);
+			buf.position(buf.position() + 4 * targets.length);
+			double[] costs = new double[entryCount];
+			buf.asDoubleBuffer().get(costs);
+			buf.position(buf.position() + 8 * costs.length);
+			byte[] states = new byte[entryCount];
+			buf.get(states);
+
+			nodes = loadedNodes;
+			neighbours = new int[n][];
+			edgeCosts = new double[n][];
+			edgeStates = new byte[n][];
+			for (int i = 0; i < n; i++) {
+				neighbours[i] = Arrays.copyOfRange(targets, offsets[i], offsets[i + 1]);
+				edgeCosts[i] = Arrays.copyOfRange(costs, offsets[i], offsets[i + 1]);
+				edgeStates[i] = Arrays.copyOfRange(states, offsets[i], offsets[i + 1]);
+			}
+			tree = null;
+			armPoints = null;
+			startId = locate(start, ps.getInitialState());
+			goalId = locate(goal, ps.getGoalState());
+			return true;
+		} finally {
+			channel.close();
+		}
+	}
+
+	/** Returns node id if it is at cfg, otherwise adds cfg as a new node */
+	private int locate(int id, ArmConfig cfg) {
+		if (id >= 0 && id < nodes.size() && nodes.toConfig(id).maxDistance(cfg) == 0) {
+			return id;
+		}
+		return addNode(cfg);
+	}
+
+	/**
+	 * Returns a hash identifying a set of obstacles together with the joint
+	 * count, used to match roadmap cache files to problems.
+	 *
+	 * @param obstacles
+	 *            the obstacles.
+	 * @param jointCount
+	 *            the number of joints.
+	 * @return the hash.
+	 */
+	public static long environmentHash(List<Obstacle> obstacles, int jointCount) {
+		long hash = 0xCBF29CE484222325L ^ jointCount;
+		for (Obstacle o : obstacles) {
+			Rectangle2D rect = o.getRect();
+			double[] values = { rect.getX(), rect.getY(), rect.getWidth(),
+					rect.getHeight() };
+			for (double v : values) {
+				hash = (hash ^ Double.doubleToLongBits(v)) * 0x100000001B3L;
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Replaces the obstacles after some were added, removed or moved (a move
+	 * being a removal plus an addition). Only edges whose swept links may
+	 * overlap a changed obstacle are revisited: free edges near an added
+	 * obstacle and blocked edges near a removed one. Such an edge is marked
+	 * blocked if one of its endpoints is now in collision, and otherwise
+	 * reset to unchecked so that findPath validates it only if it is used,
+	 * as in lazy mode.
+	 *
+	 * @param newObstacles
+	 *            the complete new set of obstacles.
+	 * @param added
+	 *            the obstacles in newObstacles that are new.
+	 * @param removed
+	 *            the obstacles that are no longer present.
+	 * @return the changed edges as pairs of node ids, flattened; an edge is
+	 *         reported if it became passable or impassable for the search.
+	 */
+	public int[] updateObstacles(List<Obstacle> newObstacles, List<Obstacle> added,
+			List<Obstacle> removed) {
+		obstacles = new ArrayList<Obstacle>(newObstacles);
+		DistanceField field = checker.getDistanceField();
+		if (field != null) {
+			field = field.update(obstacles, added, removed, threadCount);
+		}
+		checker = new CollisionChecker(obstacles, checker.getResolution(),
+				newCache(), field);
+		CollisionChecker addedChecker = new CollisionChecker(added,
+				checker.getResolution());
+		Rectangle2D addedRegion = region(added);
+		Rectangle2D removedRegion = region(removed);
+		int nodeCount = nodes.size();
+		int known = armPoints == null ? 0 : armPoints.length;
+		if (known < nodeCount) {
+			armPoints = armPoints == null ? new double[nodeCount][]
+					: Arrays.copyOf(armPoints, nodeCount);
+			for (int i = known; i < nodeCount; i++) {
+				armPoints[i] = jointPositions(nodes.toConfig(i));
+			}
+		}
+		int[] changedEdges = new int[16];
+		int count = 0;
+		for (int i = 0; i < nodeCount; i++) {
+			for (int k = 0; k < neighbours[i].length; k++) {
+				int j = neighbours[i][k];
+				if (j < i) {
+					continue;
+				}
+				byte old = edgeStates[i][k];
+				Rectangle2D changed = old == INVALID ? removedRegion : addedRegion;
+				if (changed == null || !mayTouch(armPoints[i], armPoints[j],
+						nodes.motionBound(i, j), changed)) {
+					continue;
+				}
+				CollisionChecker c = old == INVALID ? checker : addedChecker;
+				byte state = c.isValid(nodes.toConfig(i))
+						&& c.isValid(nodes.toConfig(j)) ? UNCHECKED : INVALID;
+				edgeStates[i][k] = state;
+				edgeStates[j][indexOf(neighbours[j], i)] = state;
+				if ((old == INVALID) != (state == INVALID)) {
+					if (count + 2 > changedEdges.length) {
+						changedEdges = Arrays.copyOf(changedEdges, count * 2);
+					}
+					changedEdges[count++] = i;
+					changedEdges[count++] = j;
+				}
+			}
+		}
+		return Arrays.copyOf(changedEdges, count);
+	}
+
+	/** Returns the bounding rectangle of some obstacles, or null if none */
+	private static Rectangle2D region(List<Obstacle> obstacles) {
+		Rectangle2D region = null;
+		for (Obstacle o : obstacles) {
+			region = region == null ? o.getRect() : region.createUnion(o.getRect());
+		}
+		return region;
+	}
+
+	/** Returns the base and link endpoint coordinates as x0, y0, x1, y1, ... */
+	private static double[] jointPositions(ArmConfig cfg) {
+		double[] points = new double[2 * (cfg.getJointCount() + 1)];
+		for (int i = 0; i <= cfg.getJointCount(); i++) {
+			points[2 * i] = cfg.jointX(i);
+			points[2 * i + 1] = cfg.jointY(i);
+		}
+		return points;
+	}
+
+	/**
+	 * Returns whether any link may overlap the rectangle while the arm moves
+	 * along an edge. No joint moves further than the motion bound, so each
+	 * link stays within its bounding box at either end grown by that bound.
+	 */
+	private static boolean mayTouch(double[] points0, double[] points1,
+			double bound, Rectangle2D rect) {
+		for (int p = 2; p < points0.length; p += 2) {
+			double minX = Math.max(Math.min(points0[p - 2], points0[p]),
+					Math.min(points1[p - 2], points1[p])) - bound;
+			double maxX = Math.min(Math.max(points0[p - 2], points0[p]),
+					Math.max(points1[p - 2], points1[p])) + bound;
+			double minY = Math.max(Math.min(points0[p - 1], points0[p + 1]),
+					Math.min(points1[p - 1], points1[p + 1])) - bound;
+			double maxY = Math.min(Math.max(points0[p - 1], points0[p + 1]),
+					Math.max(points1[p - 1], points1[p + 1])) + bound;
+			if (maxX >= rect.getMinX() && minX <= rect.getMaxX()
+					&& maxY >= rect.getMinY() && minY <= rect.getMaxY()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Validates the edge between two nodes down to its primitive steps if
+	 * that has not been done yet, and records the result in both directions.
+	 * The check is deterministic, so concurrent searches that validate the
+	 * same edge record the same state.
+	 *
+	 * @param i
+	 *            one end of the edge.
+	 * @param j
+	 *            the other end of the edge.
+	 * @return whether the edge is valid.
+	 */
+	boolean validateEdge(int i, int j) {
+		int k = indexOf(neighbours[i], j);
+		byte old = edgeStates[i][k];
+		if (old == UNCHECKED || old == COARSE) {
+			ArmConfig cfg0 = nodes.toConfig(i);
+			ArmConfig cfg1 = nodes.toConfig(j);
+			boolean valid = old == COARSE ? checker.isValidPrimitiveEdge(cfg0, cfg1)
+					: checker.isValidMotion(cfg0, cfg1);
+			byte state = valid ? VALID : INVALID;
+			edgeStates[i][k] = state;
+			edgeStates[j][indexOf(neighbours[j], i)] = state;
+		}
+		return edgeStates[i][k] == VALID;
+	}
+
+	/**
+	 * Draws uniformly random configurations until a valid one is found.
+	 *
+	 * @param random
+	 *            the random number source.
+	 * @return a valid configuration.
+	 */
+	private ArmConfig sample(Random random) {
+		int jointCount = ps.getInitialState().getJointCount();
+		while (true) {
+			ArmConfig cfg = randomConfig(random, jointCount);
+			if (tableTrig) {
+				cfg = onGrid(cfg);
+			}
+			if (checker.isValid(cfg)) {
+				return cfg;
+			}
+		}
+	}
+
+	/**
+	 * Returns a configuration with the same base and its joint angles
+	 * rounded to whole primitive joint steps, with TrigTable kinematics.
+	 */
+	private static ArmConfig onGrid(ArmConfig cfg) {
+		double[] angles = new double[cfg.getJointCount()];
+		for (int i = 0; i < angles.length; i++) {
+			angles[i] = Math.rint(cfg.angle(i) / TrigTable.STEP) * TrigTable.STEP;
+		}
+		return new ArmConfig(cfg.baseX(), cfg.baseY(), angles, true);
+	}
+
+	/**
+	 * Returns a configuration with its base uniformly distributed over the
+	 * workspace and its joint angles uniformly distributed over the allowed
+	 * range. The configuration is not checked for validity.
+	 *
+	 * @param random
+	 *            the random number source.
+	 * @param jointCount
+	 *            the number of joints.
+	 * @return a random configuration.
+	 */
+	public static ArmConfig randomConfig(Random random, int jointCount) {
+		List<Double> angles = new ArrayList<Double>(jointCount);
+		for (int j = 0; j < jointCount; j++) {
+			angles.add(Tester.MIN_JOINT_ANGLE + random.nextDouble()
+					* (Tester.MAX_JOINT_ANGLE - Tester.MIN_JOINT_ANGLE));
+		}
+		return new ArmConfig(new Point2D.Double(
+				Tester.BOUNDS.getX() + random.nextDouble() * Tester.BOUNDS.getWidth(),
+				Tester.BOUNDS.getY() + random.nextDouble() * Tester.BOUNDS.getHeight()),
+				angles);
+	}
+
+	/**
+	 * Returns the ids of the nodes closest to node i, nearest first.
+	 *
+	 * @param tree
+	 *            the k-d tree over all nodes.
+	 * @param point
+	 *            the coordinates of node i.
+	 * @param i
+	 *            the node id.
+	 * @return the ids of up to neighbourCount nearest other nodes.
+	 */
+	private int[] nearest(KdTree tree, double[] point, int i) {
+		int[] ids = tree.nearest(point, neighbourCount + 1);
+		int[] result = new int[ids.length - 1];
+		int count = 0;
+		for (int id : ids) {
+			if (id != i && count < result.length) {
+				result[count++] = id;
+			}
+		}
+		return result;
+	}
+
+	private static boolean contains(int[] values, int value) {
+		return indexOf(values, value) >= 0;
+	}
+
+	private static int indexOf(int[] values, int value) {
+		for (int k = 0; k < values.length; k++) {
+			if (values[k] == value) {
+				return k;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Sets the number of random samples.
+	 *
+	 * @param sampleCount
+	 *            the number of samples, excluding the initial and goal states.
+	 */
+	public void setSampleCount(int sampleCount) {
+		this.sampleCount = sampleCount;
+	}
+
+	/**
+	 * Sets the number of nearest neighbours each node tries to connect to.
+	 *
+	 * @param neighbourCount
+	 *            the number of neighbours.
+	 */
+	public void setNeighbourCount(int neighbourCount) {
+		this.neighbourCount = neighbourCount;
+	}
+
+	/**
+	 * Sets the number of worker threads used by createMap.
+	 *
+	 * @param threadCount
+	 *            the number of threads.
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * Sets the seed for the sampler. Roadmaps built with the same seed and
+	 * settings are identical regardless of the thread count.
+	 *
+	 * @param seed
+	 *            the seed.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets whether edge validation is deferred until a path is searched for.
+	 *
+	 * @param lazy
+	 *            true to build the roadmap without checking edges.
+	 */
+	public void setLazy(boolean lazy) {
+		this.lazy = lazy;
+	}
+
+	/**
+	 * Sets whether the roadmap samples joint angles on the primitive joint
+	 * step grid and computes the forward kinematics of its nodes with
+	 * TrigTable, which is cheaper than Math.cos/sin. Table rounding only
+	 * affects the coarse checks: findPath accepts an edge only once its
+	 * primitive steps pass CollisionChecker's exact checks. Off by default;
+	 * must be set before the roadmap is built or loaded.
+	 *
+	 * @param tableTrig
+	 *            true to sample on the grid and use the tables.
+	 */
+	public void setTableTrig(boolean tableTrig) {
+		this.tableTrig = tableTrig;
+	}
+
+	/**
+	 * Sets the memory cap of the collision cache that memoises state checks
+	 * for this roadmap. The cache is replaced, with its counters, whenever
+	 * the obstacles change. Off by default, since cached verdicts are
+	 * shared between nearby states and so can differ from the tester's.
+	 *
+	 * @param maxBytes
+	 *            the memory cap in bytes, or 0 to check every state afresh.
+	 */
+	public void setCacheSize(long maxBytes) {
+		this.cacheBytes = maxBytes;
+		this.checker = new CollisionChecker(obstacles, checker.getResolution(),
+				newCache(), checker.getDistanceField());
+	}
+
+	/**
+	 * Returns the collision cache of this roadmap.
+	 *
+	 * @return the cache, or null if none was configured.
+	 */
+	public CollisionCache getCollisionCache() {
+		return checker.getCache();
+	}
+
+	/**
+	 * Builds the distance field that pre-checks obstacle collisions for this
+	 * roadmap, at the given resolution. When the obstacles change, the field
+	 * is updated around the changed ones rather than rebuilt. The verdicts
+	 * are the same either way.
+	 *
+	 * @param resolution
+	 *            the number of field cells along each side of the
+	 *            workspace, or 0 for no field.
+	 */
+	public void setDistanceFieldResolution(int resolution) {
+		setDistanceField(resolution > 0 ? DistanceField.build(obstacles,
+				resolution, threadCount) : null);
+	}
+
+	/**
+	 * Sets the distance field that pre-checks obstacle collisions for this
+	 * roadmap, such as one DistanceField.forProblem loaded from its cache
+	 * file. When the obstacles change, the field is updated around the
+	 * changed ones rather than rebuilt.
+	 *
+	 * @param field
+	 *            the distance field of the current obstacles, or null for
+	 *            none.
+	 */
+	public void setDistanceField(DistanceField field) {
+		this.checker = new CollisionChecker(obstacles, checker.getResolution(),
+				checker.getCache(), field);
+	}
+
+	/** Returns a new collision cache if one is configured, otherwise null */
+	private CollisionCache newCache() {
+		return cacheBytes > 0 ? new CollisionCache(ps.getInitialState()
+				.getJointCount(), cacheBytes) : null;
+	}
+
+	/**
+	 * Returns the number of nodes in the roadmap.
+	 *
+	 * @return the number of nodes in the roadmap.
+	 */
+	public int getNodeCount() {
+		return nodes.size();
+	}
+
+	/**
+	 * Returns the id of the node at the initial state.
+	 *
+	 * @return the id of the start node.
+	 */
+	public int getStartId() {
+		return startId;
+	}
+
+	/**
+	 * Returns the id of the node at the goal state.
+	 *
+	 * @return the id of the goal node.
+	 */
+	public int getGoalId() {
+		return goalId;
+	}
+
+	/**
+	 * Returns the configuration of a node.
+	 *
+	 * @param i
+	 *            the node id.
+	 * @return the configuration of node i.
+	 */
+	public ArmConfig getNode(int i) {
+		return nodes.toConfig(i);
+	}
+
+	/**
+	 * Returns the ids of the nodes connected to a node.
+	 *
+	 * @param i
+	 *            the node id.
+	 * @return a copy of the neighbouring node ids.
+	 */
+	public int[] getNeighbours(int i) {
+		return neighbours[i].clone();
+	}
+
+	/**
+	 * Returns the number of undirected edges in the roadmap.
+	 *
+	 * @return the number of undirected edges in the roadmap.
+	 */
+	public int getEdgeCount() {
+		int count = 0;
+		for (int i = 0; i < nodes.size(); i++) {
+			count += neighbours[i].length;
+		}
+		return count / 2;
+	}
+
+	/** Returns ArmConfig.totalDistance between two nodes, without building them */
+	double distance(int i, int j) {
+		return nodes.totalDistance(i, j);
+	}
+
+	/** Neighbour ids of node i, without copying (for the search) */
+	int[] neighbourIds(int i) {
+		return neighbours[i];
+	}
+
+	/** Edge costs of node i, parallel to neighbourIds(i) */
+	double[] neighbourCosts(int i) {
+		return edgeCosts[i];
+	}
+
+	/** Edge states of node i, parallel to neighbourIds(i) */
+	byte[] neighbourStates(int i) {
+		return edgeStates[i];
+	}
 }
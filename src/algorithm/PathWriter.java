@@ -0,0 +1,174 @@
+package algorithm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import problem.ArmConfig;
+
+/**
+ * Writes a solution file directly from coarse waypoints, interpolating the
+ * primitive steps between them on the fly. Steps are formatted into a
+ * fixed-size buffer and written straight to a file channel, so memory use
+ * does not depend on the path length. The step count is not known until the
+ * end, so the header is written as a padded placeholder and patched when
+ * the writer is closed; ProblemSpec.loadSolution ignores the padding.
+ */
+public class PathWriter implements Closeable {
+	/** Width reserved for the step count in the header */
+	private static final int HEADER_DIGITS = 10;
+	/** Size of the output buffer in bytes */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** The output file */
+	private FileChannel channel;
+	/** Pending output */
+	private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	/** Formats one line at a time */
+	private StringBuilder line = new StringBuilder();
+	/** Line separator, as used by ProblemSpec.saveSolution */
+	private String ls = System.getProperty("line.separator");
+	/** The previous waypoint, or null before the first */
+	private double[] previous;
+	/** Scratch space for interpolated configurations */
+	private double[] step;
+	/** Number of primitive steps written */
+	private long stepCount;
+
+	/**
+	 * Opens a solution file for writing, replacing any existing file.
+	 *
+	 * @param filename
+	 *            the path of the file to write.
+	 * @throws IOException
+	 *             if the file cannot be opened.
+	 */
+	public PathWriter(String filename) throws IOException {
+		channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		for (int i = 0; i < HEADER_DIGITS; i++) {
+			line.append(' ');
+		}
+		line.append(ls);
+		flushLine();
+	}
+
+	/**
+	 * Appends a waypoint. The first waypoint is written as is; each later
+	 * one is reached from the previous one by straight-line primitive steps.
+	 *
+	 * @param cfg
+	 *            the next waypoint.
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	public void addWaypoint(ArmConfig cfg) throws IOException {
+		double[] next = KdTree.coordinates(cfg);
+		if (previous == null) {
+			step = new double[next.length];
+			writeConfig(next);
+		} else {
+			int steps = PrimitiveSteps.count(previous, next);
+			for (int i = 1; i < steps; i++) {
+				double t = (double) i / steps;
+				for (int d = 0; d < next.length; d++) {
+					step[d] = previous[d] + t * (next[d] - previous[d]);
+				}
+				writeConfig(step);
+			}
+			if (steps > 0) {
+				writeConfig(next);
+			}
+			stepCount += steps;
+		}
+		previous = next;
+	}
+
+	/**
+	 * Returns the number of primitive steps written so far.
+	 *
+	 * @return the number of steps.
+	 */
+	public long getStepCount() {
+		return stepCount;
+	}
+
+	/**
+	 * Flushes the remaining output, fills in the step count and closes the
+	 * file.
+	 *
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	public void close() throws IOException {
+		try {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			String count = Long.toString(stepCount);
+			if (count.length() > HEADER_DIGITS) {
+				throw new IOException("Too many steps for the header: " + count);
+			}
+			ByteBuffer header = ByteBuffer.wrap(count.getBytes("US-ASCII"));
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Writes the primitive-step path through the given waypoints to a
+	 * solution file.
+	 *
+	 * @param waypoints
+	 *            the waypoints, joined by straight-line motions.
+	 * @param filename
+	 *            the path of the file to write.
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	public static void write(List<ArmConfig> waypoints, String filename)
+			throws IOException {
+		PathWriter writer = new PathWriter(filename);
+		try {
+			for (ArmConfig cfg : waypoints) {
+				writer.addWaypoint(cfg);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/** Formats a configuration the way ArmConfig.toString does */
+	private void writeConfig(double[] cfg) throws IOException {
+		line.append(cfg[0]);
+		for (int d = 1; d < cfg.length; d++) {
+			line.append(' ');
+			line.append(cfg[d]);
+		}
+		line.append(ls);
+		flushLine();
+	}
+
+	/** Moves the formatted line into the buffer, writing it out if full */
+	private void flushLine() throws IOException {
+		if (buffer.remaining() < line.length()) {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+		for (int i = 0; i < line.length(); i++) {
+			buffer.put((byte) line.charAt(i));
+		}
+		line.setLength(0);
+	}
+}
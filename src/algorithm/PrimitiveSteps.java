@@ -0,0 +1,80 @@
+package algorithm;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import problem.ArmConfig;
+import tester.Tester;
+
+/**
+ * Expands coarse waypoint paths into sequences of primitive steps, i.e.
+ * steps that move the base by at most Tester.MAX_BASE_STEP and each joint by
+ * at most Tester.MAX_JOINT_STEP.
+ */
+public class PrimitiveSteps {
+	/**
+	 * Returns the number of primitive steps needed for the straight-line
+	 * motion from cfg0 to cfg1.
+	 *
+	 * @param cfg0
+	 *            the start of the motion.
+	 * @param cfg1
+	 *            the end of the motion.
+	 * @return the number of steps, or 0 if the configurations are equal.
+	 */
+	public static int count(ArmConfig cfg0, ArmConfig cfg1) {
+		double baseSteps = Point2D.distance(cfg0.baseX(), cfg0.baseY(),
+				cfg1.baseX(), cfg1.baseY()) / Tester.MAX_BASE_STEP;
+		double jointSteps = cfg0.maxAngleDiff(cfg1) / Tester.MAX_JOINT_STEP;
+		return (int) Math.ceil(Math.max(baseSteps, jointSteps));
+	}
+
+	/**
+	 * Returns the number of primitive steps needed for the straight-line
+	 * motion between two configurations given as coordinate arrays (base x,
+	 * base y, joint angles), as count(ArmConfig, ArmConfig) does.
+	 *
+	 * @param p0
+	 *            the start of the motion.
+	 * @param p1
+	 *            the end of the motion.
+	 * @return the number of steps, or 0 if the configurations are equal.
+	 */
+	public static int count(double[] p0, double[] p1) {
+		double dx = p1[0] - p0[0];
+		double dy = p1[1] - p0[1];
+		double baseSteps = Math.sqrt(dx * dx + dy * dy) / Tester.MAX_BASE_STEP;
+		double maxDiff = 0;
+		for (int i = 2; i < p0.length; i++) {
+			maxDiff = Math.max(maxDiff, Math.abs(p0[i] - p1[i]));
+		}
+		double jointSteps = maxDiff / Tester.MAX_JOINT_STEP;
+		return (int) Math.ceil(Math.max(baseSteps, jointSteps));
+	}
+
+	/**
+	 * Returns the full primitive-step path through the given waypoints,
+	 * starting with the first waypoint and ending with the last.
+	 *
+	 * @param waypoints
+	 *            the waypoints, joined by straight-line motions.
+	 * @return the configurations after each primitive step.
+	 */
+	public static List<ArmConfig> expand(List<ArmConfig> waypoints) {
+		List<ArmConfig> path = new ArrayList<ArmConfig>();
+		path.add(waypoints.get(0));
+		for (int w = 1; w < waypoints.size(); w++) {
+			ArmConfig cfg0 = waypoints.get(w - 1);
+			ArmConfig cfg1 = waypoints.get(w);
+			int steps = count(cfg0, cfg1);
+			for (int i = 1; i < steps; i++) {
+				path.add(CollisionChecker.interpolate(cfg0, cfg1, (double) i / steps));
+			}
+			if (steps > 0) {
+				path.add(cfg1);
+			}
+		}
+		return path;
+	}
+}
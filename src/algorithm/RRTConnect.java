@@ -0,0 +1,212 @@
+package algorithm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import problem.ArmConfig;
+import problem.ProblemSpec;
+
+/**
+ * Bidirectional RRT-Connect planner for single queries. One tree grows from
+ * the initial state and one from the goal state; each iteration extends one
+ * tree towards a random configuration and then greedily extends the other
+ * tree towards the new node, swapping roles each time, until the trees meet.
+ *
+ * Validity is checked with the same CollisionChecker as PRM, and nearest
+ * nodes are found with a KdTree per tree.
+ */
+public class RRTConnect {
+	/** Default maximum scaled distance of one extension */
+	public static final double DEFAULT_STEP_SIZE = 0.05;
+	/** Default number of iterations before giving up */
+	public static final int DEFAULT_MAX_ITERATIONS = 100000;
+
+	/** Result of extending a tree towards a configuration */
+	private static final int TRAPPED = 0;
+	private static final int ADVANCED = 1;
+	private static final int REACHED = 2;
+
+	/** The problem being solved */
+	private ProblemSpec ps;
+	/** Validity checks for states and edges */
+	private CollisionChecker checker;
+	/** Maximum scaled distance of one extension */
+	private double stepSize = DEFAULT_STEP_SIZE;
+	/** Number of iterations before giving up */
+	private int maxIterations = DEFAULT_MAX_ITERATIONS;
+	/** Seed for the sampler */
+	private long seed = System.nanoTime();
+	/** Total number of nodes in both trees after the last search */
+	private int nodeCount;
+
+	/**
+	 * Constructs a planner for the given problem.
+	 *
+	 * @param ps
+	 *            the problem, which must have been loaded.
+	 */
+	public RRTConnect(ProblemSpec ps) {
+		this.ps = ps;
+		this.checker = new CollisionChecker(ps);
+	}
+
+	/**
+	 * Searches for a path from the initial state to the goal state.
+	 *
+	 * @return the waypoints of the path, starting at the initial state and
+	 *         ending at the goal state, joined by valid straight-line
+	 *         motions; or null if none was found within the iteration limit.
+	 */
+	public List<ArmConfig> findPath() {
+		ArmConfig initial = ps.getInitialState();
+		int jointCount = initial.getJointCount();
+		Random random = new Random(seed);
+		Tree a = new Tree(initial, true);
+		Tree b = new Tree(ps.getGoalState(), false);
+		nodeCount = 2;
+		try {
+			if (checker.isValidMotion(initial, ps.getGoalState())) {
+				return joinPaths(a, 0, b, 0, false);
+			}
+			for (int iter = 0; iter < maxIterations; iter++) {
+				ArmConfig target = PRM.randomConfig(random, jointCount);
+				if (extend(a, target) != TRAPPED) {
+					ArmConfig newest = a.nodes.toConfig(a.size() - 1);
+					int status;
+					do {
+						status = extend(b, newest);
+					} while (status == ADVANCED);
+					if (status == REACHED) {
+						Tree start = a.fromStart ? a : b;
+						Tree goal = start == a ? b : a;
+						return joinPaths(start, start.size() - 1, goal,
+								goal.size() - 1, true);
+					}
+				}
+				Tree t = a;
+				a = b;
+				b = t;
+			}
+			return null;
+		} finally {
+			nodeCount = a.size() + b.size();
+		}
+	}
+
+	/**
+	 * Extends a tree by at most one step from its nearest node towards the
+	 * target.
+	 */
+	private int extend(Tree tree, ArmConfig target) {
+		double[] q = KdTree.coordinates(target);
+		int near = tree.index.nearest(q, 1)[0];
+		ArmConfig from = tree.nodes.toConfig(near);
+		double d = tree.index.distance(tree.nodes.coordinates(near), q);
+		boolean reached = d <= stepSize;
+		ArmConfig to = reached ? target
+				: CollisionChecker.interpolate(from, target, stepSize / d);
+		// The target may be a random sample, so it is checked even when reached.
+		if (!checker.isValid(to) || !checker.isValidMotion(from, to)) {
+			return TRAPPED;
+		}
+		tree.add(to, near);
+		nodeCount++;
+		return reached ? REACHED : ADVANCED;
+	}
+
+	/**
+	 * Returns the path from the root of the start tree to node i, followed by
+	 * the path from node j of the goal tree to its root. Nodes i and j are
+	 * either the same configuration (shared) or joined by a valid edge.
+	 */
+	private static List<ArmConfig> joinPaths(Tree start, int i, Tree goal, int j,
+			boolean shared) {
+		List<ArmConfig> path = new ArrayList<ArmConfig>();
+		for (int v = i; v != -1; v = start.nodes.getParent(v)) {
+			path.add(start.nodes.toConfig(v));
+		}
+		Collections.reverse(path);
+		if (shared) {
+			j = goal.nodes.getParent(j);
+		}
+		for (int v = j; v != -1; v = goal.nodes.getParent(v)) {
+			path.add(goal.nodes.toConfig(v));
+		}
+		return path;
+	}
+
+	/**
+	 * Sets the maximum distance of one extension, measured in the scaled
+	 * configuration space of KdTree.armScale.
+	 *
+	 * @param stepSize
+	 *            the step size.
+	 */
+	public void setStepSize(double stepSize) {
+		this.stepSize = stepSize;
+	}
+
+	/**
+	 * Sets the number of iterations before findPath gives up.
+	 *
+	 * @param maxIterations
+	 *            the iteration limit.
+	 */
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Sets the seed for the sampler.
+	 *
+	 * @param seed
+	 *            the seed.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Returns the total number of nodes in both trees after the last search.
+	 *
+	 * @return the number of nodes grown by the last search.
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * A tree of configurations rooted at node 0. Each node's cost is its path
+	 * length from the root, measured with ArmConfig.totalDistance.
+	 */
+	private static class Tree {
+		final ConfigStore nodes;
+		final KdTree index;
+		/** Whether the root is the initial state */
+		final boolean fromStart;
+
+		Tree(ArmConfig root, boolean fromStart) {
+			nodes = new ConfigStore(root.getJointCount(), 64);
+			index = new KdTree(KdTree.armScale(root.getJointCount()));
+			this.fromStart = fromStart;
+			add(root, -1);
+		}
+
+		int size() {
+			return nodes.size();
+		}
+
+		void add(ArmConfig cfg, int parentId) {
+			double[] point = KdTree.coordinates(cfg);
+			index.insert(point);
+			int id = nodes.add(point);
+			if (parentId >= 0) {
+				nodes.setParent(id, parentId);
+				nodes.setCost(id, nodes.getCost(parentId)
+						+ nodes.totalDistance(parentId, id));
+			}
+		}
+	}
+}
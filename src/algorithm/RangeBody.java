@@ -0,0 +1,6 @@
+package algorithm;
+
+/** Work done on a contiguous range of indices, for RangeTask */
+interface RangeBody {
+	void run(int lo, int hi);
+}
@@ -0,0 +1,46 @@
+package algorithm;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits an index range in halves until it is at most a grain long, and
+ * runs a RangeBody on each piece, for use with a ForkJoinPool.
+ */
+class RangeTask extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+	private final int lo;
+	private final int hi;
+	/** Ranges at most this long are run without splitting */
+	private final int grain;
+	private final RangeBody body;
+
+	/**
+	 * Constructs a task for a range of indices.
+	 *
+	 * @param lo
+	 *            the first index.
+	 * @param hi
+	 *            one past the last index.
+	 * @param grain
+	 *            the longest range to run without splitting.
+	 * @param body
+	 *            the work to do on each piece of the range.
+	 */
+	RangeTask(int lo, int hi, int grain, RangeBody body) {
+		this.lo = lo;
+		this.hi = hi;
+		this.grain = grain;
+		this.body = body;
+	}
+
+	@Override
+	protected void compute() {
+		if (hi - lo <= grain) {
+			body.run(lo, hi);
+		} else {
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new RangeTask(lo, mid, grain, body),
+					new RangeTask(mid, hi, grain, body));
+		}
+	}
+}
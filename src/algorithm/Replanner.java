@@ -0,0 +1,285 @@
+package algorithm;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import problem.ArmConfig;
+import problem.Obstacle;
+import problem.ProblemSpec;
+
+/**
+ * Incremental replanning over a PRM roadmap when obstacles are added,
+ * removed or moved. The search is Lifelong Planning A* (the fixed-start form
+ * of D* Lite): g and rhs values survive between plans, so after an obstacle
+ * change only the nodes whose costs are affected are expanded again.
+ *
+ * An obstacle change only resets the roadmap edges whose swept links may
+ * overlap the changed rectangles (see PRM.updateObstacles). Those edges are
+ * validated lazily: edges on the candidate path are checked before it is
+ * accepted, and any blocked edge is fed back into the search as a cost
+ * change.
+ */
+public class Replanner {
+	/** The roadmap being searched */
+	private PRM map;
+	/** The current obstacles */
+	private List<Obstacle> obstacles;
+	/** The start and goal node ids */
+	private int start;
+	private int goal;
+	/** Cost of the best known path to each node */
+	private double[] g;
+	/** One-step lookahead cost of each node */
+	private double[] rhs;
+	/** Heuristic value of each node, or NaN if not yet computed */
+	private double[] h;
+	/** Nodes whose g and rhs differ, keyed lexicographically */
+	private IndexedHeap open;
+	/** Number of nodes expanded since the last plan started */
+	private int expandedCount;
+
+	/**
+	 * Constructs a replanner between the start and goal nodes of a built
+	 * roadmap.
+	 *
+	 * @param ps
+	 *            the problem the roadmap was built for.
+	 * @param map
+	 *            the roadmap.
+	 */
+	public Replanner(ProblemSpec ps, PRM map) {
+		this.map = map;
+		this.obstacles = ps.getObstacles();
+		this.start = map.getStartId();
+		this.goal = map.getGoalId();
+		int n = map.getNodeCount();
+		g = new double[n];
+		rhs = new double[n];
+		h = new double[n];
+		open = new IndexedHeap(n);
+		Arrays.fill(g, Double.POSITIVE_INFINITY);
+		Arrays.fill(rhs, Double.POSITIVE_INFINITY);
+		Arrays.fill(h, Double.NaN);
+		rhs[start] = 0;
+		push(start);
+	}
+
+	/**
+	 * Returns the current cheapest valid path, reusing the search effort of
+	 * previous calls.
+	 *
+	 * @return the configurations of the roadmap nodes on the path, or null if
+	 *         the roadmap does not connect the start and goal.
+	 */
+	public List<ArmConfig> plan() {
+		ensureCapacity(map.getNodeCount());
+		expandedCount = 0;
+		while (true) {
+			computeShortestPath();
+			if (g[goal] == Double.POSITIVE_INFINITY) {
+				return null;
+			}
+			List<Integer> path = new ArrayList<Integer>();
+			path.add(goal);
+			for (int v = goal; v != start;) {
+				v = bestPredecessor(v);
+				path.add(v);
+			}
+			boolean valid = true;
+			for (int i = path.size() - 1; i > 0 && valid; i--) {
+				int u = path.get(i);
+				int v = path.get(i - 1);
+				if (!map.validateEdge(u, v)) {
+					updateVertex(u);
+					updateVertex(v);
+					valid = false;
+				}
+			}
+			if (valid) {
+				List<ArmConfig> result = new ArrayList<ArmConfig>(path.size());
+				for (int i = path.size() - 1; i >= 0; i--) {
+					result.add(map.getNode(path.get(i)));
+				}
+				return result;
+			}
+		}
+	}
+
+	/**
+	 * Adds an obstacle and repairs the path.
+	 *
+	 * @param o
+	 *            the new obstacle.
+	 * @return the new path, as for plan.
+	 */
+	public List<ArmConfig> addObstacle(Obstacle o) {
+		obstacles.add(o);
+		applyChange(Arrays.asList(o), new ArrayList<Obstacle>());
+		return plan();
+	}
+
+	/**
+	 * Removes an obstacle, matched by its rectangle, and repairs the path.
+	 *
+	 * @param o
+	 *            the obstacle to remove.
+	 * @return the new path, as for plan.
+	 */
+	public List<ArmConfig> removeObstacle(Obstacle o) {
+		Rectangle2D rect = o.getRect();
+		for (int i = 0; i < obstacles.size(); i++) {
+			if (obstacles.get(i).getRect().equals(rect)) {
+				obstacles.remove(i);
+				break;
+			}
+		}
+		applyChange(new ArrayList<Obstacle>(), Arrays.asList(o));
+		return plan();
+	}
+
+	/**
+	 * Moves an obstacle, matched by its rectangle, and repairs the path.
+	 *
+	 * @param from
+	 *            the obstacle at its old position.
+	 * @param to
+	 *            the obstacle at its new position.
+	 * @return the new path, as for plan.
+	 */
+	public List<ArmConfig> moveObstacle(Obstacle from, Obstacle to) {
+		Rectangle2D rect = from.getRect();
+		for (int i = 0; i < obstacles.size(); i++) {
+			if (obstacles.get(i).getRect().equals(rect)) {
+				obstacles.set(i, to);
+				break;
+			}
+		}
+		applyChange(Arrays.asList(to), Arrays.asList(from));
+		return plan();
+	}
+
+	/**
+	 * Returns the number of nodes expanded by the last plan, including the
+	 * repair after an obstacle change.
+	 *
+	 * @return the number of nodes expanded.
+	 */
+	public int getExpandedCount() {
+		return expandedCount;
+	}
+
+	/** Revalidates the edges near changed obstacles and updates their ends */
+	private void applyChange(List<Obstacle> added, List<Obstacle> removed) {
+		ensureCapacity(map.getNodeCount());
+		int[] edges = map.updateObstacles(obstacles, added, removed);
+		for (int v : edges) {
+			updateVertex(v);
+		}
+	}
+
+	private void computeShortestPath() {
+		while (!open.isEmpty()
+				&& (less(open.peekKey(), open.peekTie(), key(goal), tie(goal))
+						|| rhs[goal] != g[goal])) {
+			int u = open.pop();
+			expandedCount++;
+			int[] ids = map.neighbourIds(u);
+			if (g[u] > rhs[u]) {
+				g[u] = rhs[u];
+				for (int v : ids) {
+					updateVertex(v);
+				}
+			} else {
+				g[u] = Double.POSITIVE_INFINITY;
+				updateVertex(u);
+				for (int v : ids) {
+					updateVertex(v);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Grows the per-node arrays to n nodes, for nodes added to the roadmap
+	 * since they were sized, and brings the new nodes into the search.
+	 */
+	private void ensureCapacity(int n) {
+		int old = g.length;
+		if (n <= old) {
+			return;
+		}
+		g = Arrays.copyOf(g, n);
+		rhs = Arrays.copyOf(rhs, n);
+		h = Arrays.copyOf(h, n);
+		Arrays.fill(g, old, n, Double.POSITIVE_INFINITY);
+		Arrays.fill(rhs, old, n, Double.POSITIVE_INFINITY);
+		Arrays.fill(h, old, n, Double.NaN);
+		open.ensureCapacity(n);
+		for (int v = old; v < n; v++) {
+			updateVertex(v);
+		}
+	}
+
+	/** Recomputes rhs of a node and its place in the open set */
+	private void updateVertex(int u) {
+		if (u != start) {
+			int[] ids = map.neighbourIds(u);
+			double[] costs = map.neighbourCosts(u);
+			byte[] states = map.neighbourStates(u);
+			double best = Double.POSITIVE_INFINITY;
+			for (int k = 0; k < ids.length; k++) {
+				if (states[k] != PRM.INVALID) {
+					best = Math.min(best, g[ids[k]] + costs[k]);
+				}
+			}
+			rhs[u] = best;
+		}
+		if (g[u] != rhs[u]) {
+			push(u);
+		} else {
+			open.remove(u);
+		}
+	}
+
+	/** Returns the neighbour through which node v has its rhs value */
+	private int bestPredecessor(int v) {
+		int[] ids = map.neighbourIds(v);
+		double[] costs = map.neighbourCosts(v);
+		byte[] states = map.neighbourStates(v);
+		int best = -1;
+		double bestCost = Double.POSITIVE_INFINITY;
+		for (int k = 0; k < ids.length; k++) {
+			double cost = g[ids[k]] + costs[k];
+			if (states[k] != PRM.INVALID && cost < bestCost) {
+				best = ids[k];
+				bestCost = cost;
+			}
+		}
+		return best;
+	}
+
+	private void push(int u) {
+		open.push(u, key(u), tie(u));
+	}
+
+	private double key(int u) {
+		return tie(u) + heuristic(u);
+	}
+
+	private double tie(int u) {
+		return Math.min(g[u], rhs[u]);
+	}
+
+	private double heuristic(int u) {
+		if (Double.isNaN(h[u])) {
+			h[u] = map.distance(u, goal);
+		}
+		return h[u];
+	}
+
+	private static boolean less(double key0, double tie0, double key1, double tie1) {
+		return key0 < key1 || (key0 == key1 && tie0 < tie1);
+	}
+}
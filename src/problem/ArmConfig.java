@@ -2,10 +2,12 @@ package problem;
 
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.InputMismatchException;
 import java.util.List;
-import java.util.Scanner;
+import java.util.NoSuchElementException;
 
 /** 
  * Represents a configuration of the arm, i.e. base x-y coordinates and joint
@@ -15,13 +17,16 @@ public class ArmConfig {
 	
 	/** Length of each link */
 	public static final double LINK_LENGTH = 0.05;
-
-	/** Base x and y coordinates */
-	private Point2D base;
+	
 	/** Joint angles in radians */
-	private List<Double> jointAngles;
-	/** Links as Line2D */
-	private List<Line2D> links;
+	private double[] angles;
+	/**
+	 * Joint coordinates: x and y of joint i at [2 * i, 2 * i + 1], where
+	 * joint 0 is the base and joint i + 1 is the end of link i
+	 */
+	private double[] joints;
+	/** Whether on-grid joint angles use TrigTable instead of Math.cos/sin */
+	private boolean tableTrig;
 	
 	/**
 	 * Constructor
@@ -31,9 +36,51 @@ public class ArmConfig {
 	 * 			Joint angles in radians
 	 */
 	public ArmConfig(Point2D base, List<Double> jointAngles) {
-		this.base = new Point2D.Double(base.getX(), base.getY());
-		this.jointAngles = new ArrayList<Double>(jointAngles);
-		generateLinks();
+		angles = new double[jointAngles.size()];
+		for (int i = 0; i < angles.length; i++) {
+			angles[i] = jointAngles.get(i);
+		}
+		generateLinks(base.getX(), base.getY());
+	}
+	
+	/**
+	 * Constructs an ArmConfig from base coordinates and an array of joint
+	 * angles, which is copied.
+	 *
+	 * @param x
+	 *            the x coordinate of the base.
+	 * @param y
+	 *            the y coordinate of the base.
+	 * @param jointAngles
+	 *            joint angles in radians.
+	 */
+	public ArmConfig(double x, double y, double[] jointAngles) {
+		this(x, y, jointAngles, false);
+	}
+	
+	/**
+	 * Constructs an ArmConfig from base coordinates and an array of joint
+	 * angles, which is copied, optionally looking up the sines and cosines
+	 * of angles that are whole multiples of the primitive joint step in
+	 * TrigTable. Other angles are always computed exactly. The tables agree
+	 * with Math.cos/sin to within a few ulps, not exactly, so only planners
+	 * should use them; configurations the tester checks, or that a planner
+	 * checks on its behalf, must be constructed without.
+	 *
+	 * @param x
+	 *            the x coordinate of the base.
+	 * @param y
+	 *            the y coordinate of the base.
+	 * @param jointAngles
+	 *            joint angles in radians.
+	 * @param tableTrig
+	 *            true to use the tables for on-grid angles, false to always
+	 *            compute exactly.
+	 */
+	public ArmConfig(double x, double y, double[] jointAngles, boolean tableTrig) {
+		angles = jointAngles.clone();
+		this.tableTrig = tableTrig;
+		generateLinks(x, y);
 	}
 	
 	/** 
@@ -47,14 +94,36 @@ public class ArmConfig {
 	 * @throws InputMismatchException
 	 */
 	public ArmConfig(String str) throws InputMismatchException {
-		Scanner s = new Scanner(str);
-		base = new Point2D.Double(s.nextDouble(), s.nextDouble());
-		jointAngles = new ArrayList<Double>();
-		while (s.hasNextDouble()) {
-			jointAngles.add(s.nextDouble());
+		byte[] b = str.getBytes(StandardCharsets.ISO_8859_1);
+		double[] values = new double[b.length / 2 + 1];
+		int count = 0;
+		int i = 0;
+		while (true) {
+			while (i < b.length && Character.isWhitespace(b[i])) {
+				i++;
+			}
+			if (i == b.length) {
+				break;
+			}
+			int start = i;
+			while (i < b.length && !Character.isWhitespace(b[i])) {
+				i++;
+			}
+			try {
+				values[count++] = ConfigReader.parseDouble(b, start, i);
+			} catch (NumberFormatException e) {
+				if (count <= 2) {
+					throw new InputMismatchException(str.substring(start, i));
+				}
+				count--;
+				break;
+			}
+		}
+		if (count < 2) {
+			throw new NoSuchElementException();
 		}
-		s.close();
-		generateLinks();
+		angles = Arrays.copyOfRange(values, 2, count);
+		generateLinks(values[0], values[1]);
 	}
 	
 	/**
@@ -64,9 +133,21 @@ public class ArmConfig {
 	 *            the configuration to copy.
 	 */
 	public ArmConfig(ArmConfig cfg) {
-		base = cfg.getBase();
-		jointAngles = cfg.getJointAngles();
-		links = cfg.getLinks();
+		// Configurations are never modified, so the arrays can be shared.
+		angles = cfg.angles;
+		joints = cfg.joints;
+		tableTrig = cfg.tableTrig;
+	}
+	
+	/**
+	 * Derives a configuration from another with the same base, whose joints
+	 * up to and including joint k are unchanged.
+	 */
+	private ArmConfig(ArmConfig cfg, double[] newAngles, int k) {
+		angles = newAngles;
+		joints = Arrays.copyOf(cfg.joints, cfg.joints.length);
+		tableTrig = cfg.tableTrig;
+		updateLinks(k);
 	}
 	
 	/**
@@ -76,9 +157,10 @@ public class ArmConfig {
 	 */
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
-		sb.append(base.getX());
-		sb.append(base.getY());
-		for (Double angle : jointAngles) {
+		sb.append(joints[0]);
+		sb.append(" ");
+		sb.append(joints[1]);
+		for (double angle : angles) {
 			sb.append(" ");
 			sb.append(angle);
 		}
@@ -91,7 +173,7 @@ public class ArmConfig {
 	 * @return the number of joints in this configuration.
 	 */
 	public int getJointCount() {
-		return jointAngles.size();
+		return angles.length;
 	}
 	
 	/**
@@ -100,7 +182,7 @@ public class ArmConfig {
 	 * @return the base position.
 	 */
 	public Point2D getBase() {
-		return new Point2D.Double(base.getX(), base.getY());
+		return new Point2D.Double(joints[0], joints[1]);
 	}
 	
 	/**
@@ -109,7 +191,11 @@ public class ArmConfig {
 	 * @return the list of joint angles in radians.
 	 */
 	public List<Double> getJointAngles() {
-		return new ArrayList<Double>(jointAngles);
+		List<Double> jointAngles = new ArrayList<Double>(angles.length);
+		for (double angle : angles) {
+			jointAngles.add(angle);
+		}
+		return jointAngles;
 	}
 	
 	/**
@@ -118,7 +204,135 @@ public class ArmConfig {
 	 * @return the list of links as Line2D.
 	 */
 	public List<Line2D> getLinks() {
-		return new ArrayList<Line2D>(links);
+		List<Line2D> links = new ArrayList<Line2D>(angles.length);
+		for (int i = 0; i < angles.length; i++) {
+			links.add(new Line2D.Double(joints[2 * i], joints[2 * i + 1],
+					joints[2 * i + 2], joints[2 * i + 3]));
+		}
+		return links;
+	}
+	
+	/**
+	 * Returns the x coordinate of the base.
+	 *
+	 * @return the x coordinate of the base.
+	 */
+	public double baseX() {
+		return joints[0];
+	}
+	
+	/**
+	 * Returns the y coordinate of the base.
+	 *
+	 * @return the y coordinate of the base.
+	 */
+	public double baseY() {
+		return joints[1];
+	}
+	
+	/**
+	 * Returns one joint angle.
+	 *
+	 * @param i
+	 *            the joint index, from 0 to getJointCount() - 1.
+	 * @return the angle of joint i in radians.
+	 */
+	public double angle(int i) {
+		return angles[i];
+	}
+	
+	/**
+	 * Returns the x coordinate of a joint. Joint 0 is the base, and joint
+	 * i + 1 is the end of link i, so joint getJointCount() is the tip.
+	 *
+	 * @param i
+	 *            the joint index, from 0 to getJointCount().
+	 * @return the x coordinate of joint i.
+	 */
+	public double jointX(int i) {
+		return joints[2 * i];
+	}
+	
+	/**
+	 * Returns the y coordinate of a joint, numbered as for jointX.
+	 *
+	 * @param i
+	 *            the joint index, from 0 to getJointCount().
+	 * @return the y coordinate of joint i.
+	 */
+	public double jointY(int i) {
+		return joints[2 * i + 1];
+	}
+	
+	/**
+	 * Returns whether forward kinematics of this configuration, and of those
+	 * derived from it, uses TrigTable for on-grid angles.
+	 *
+	 * @return whether the tables are used.
+	 */
+	public boolean isTableTrig() {
+		return tableTrig;
+	}
+	
+	/**
+	 * Returns this configuration with one joint angle changed. Only the links
+	 * from joint k onwards are recomputed.
+	 *
+	 * @param k
+	 *            the joint to change.
+	 * @param value
+	 *            the new angle of joint k in radians.
+	 * @return the new configuration.
+	 */
+	public ArmConfig withJointAngle(int k, double value) {
+		double[] newAngles = angles.clone();
+		newAngles[k] = value;
+		return new ArmConfig(this, newAngles, k);
+	}
+	
+	/**
+	 * Returns this configuration with new joint angles and the same base.
+	 * Links before the first changed joint are reused rather than
+	 * recomputed.
+	 *
+	 * @param jointAngles
+	 *            the new joint angles in radians, which are copied.
+	 * @return the new configuration.
+	 * @throws IllegalArgumentException
+	 *             if the number of angles differs from the joint count.
+	 */
+	public ArmConfig withJointAngles(double[] jointAngles) {
+		if (jointAngles.length != angles.length) {
+			throw new IllegalArgumentException(String.format(
+					"Expected %d joint angles, got %d.", angles.length,
+					jointAngles.length));
+		}
+		int k = 0;
+		while (k < angles.length && angles[k] == jointAngles[k]) {
+			k++;
+		}
+		return new ArmConfig(this, jointAngles.clone(), k);
+	}
+	
+	/**
+	 * Returns this configuration with the base moved and the same joint
+	 * angles. The links are translated rather than recomputed, so the
+	 * endpoints may differ from a fresh computation by rounding error.
+	 *
+	 * @param dx
+	 *            the change in base x.
+	 * @param dy
+	 *            the change in base y.
+	 * @return the new configuration.
+	 */
+	public ArmConfig withBaseDelta(double dx, double dy) {
+		ArmConfig cfg = new ArmConfig(this);
+		cfg.joints = new double[joints.length];
+		for (int i = 0; i < joints.length; i += 2) {
+			cfg.joints[i] = joints[i] + dx;
+			cfg.joints[i + 1] = joints[i + 1] + dy;
+		}
+		return cfg;
 	}
 	
 	/**
@@ -133,11 +347,11 @@ public class ArmConfig {
 		if (this.getJointCount() != otherState.getJointCount()) {
 			return -1;
 		}
-		double maxDistance = base.distance(otherState.getBase());
-		List<Line2D> otherLinks = otherState.getLinks();
-		for (int i = 0; i < links.size(); i++) {
-			double distance = links.get(i).getP2().distance(
-					otherLinks.get(i).getP2());
+		double[] other = otherState.joints;
+		double maxDistance = 0;
+		for (int i = 0; i < joints.length; i += 2) {
+			double distance = Point2D.distance(joints[i], joints[i + 1],
+					other[i], other[i + 1]);
 			if (distance > maxDistance) {
 				maxDistance = distance;
 			}
@@ -157,11 +371,11 @@ public class ArmConfig {
 		if (this.getJointCount() != otherState.getJointCount()) {
 			return -1;
 		}
-		double totalDist = base.distance(otherState.getBase());
-		List<Line2D> otherLinks = otherState.getLinks();
-		for (int i = 0; i < links.size(); i++) {
-			totalDist += links.get(i).getP2().distance(
-					otherLinks.get(i).getP2());
+		double[] other = otherState.joints;
+		double totalDist = 0;
+		for (int i = 0; i < joints.length; i += 2) {
+			totalDist += Point2D.distance(joints[i], joints[i + 1], other[i],
+					other[i + 1]);
 		}
 		return totalDist;
 	}
@@ -178,10 +392,9 @@ public class ArmConfig {
 		if (this.getJointCount() != otherState.getJointCount()) {
 			return -1;
 		}
-		List<Double> otherJointAngles = otherState.getJointAngles();
 		double maxDiff = 0;
-		for (int i = 0; i < jointAngles.size(); i++) {
-			double diff = Math.abs(jointAngles.get(i) - otherJointAngles.get(i));
+		for (int i = 0; i < angles.length; i++) {
+			double diff = Math.abs(angles[i] - otherState.angles[i]);
 			if (diff > maxDiff) {
 				maxDiff = diff;
 			}
@@ -190,20 +403,52 @@ public class ArmConfig {
 	}
 	
 	/**
-	 * Generates links from joint angles
+	 * Generates the joint coordinates from the base and joint angles
+	 */
+	private void generateLinks(double x, double y) {
+		joints = new double[2 * angles.length + 2];
+		joints[0] = x;
+		joints[1] = y;
+		updateLinks(0);
+	}
+	
+	/**
+	 * Recomputes the ends of links k onwards from joint k. With table trig
+	 * on, while the joint angles are whole multiples of the primitive step,
+	 * the link directions come from TrigTable; from the first joint off the
+	 * grid onwards, or always with table trig off, they are computed
+	 * exactly.
 	 */
-	private void generateLinks() {
-		links = new ArrayList<Line2D>();
-		double x1 = base.getX();
-		double y1 = base.getY();
+	private void updateLinks(int k) {
+		boolean onGrid = tableTrig;
+		int totalSteps = 0;
 		double totalAngle = 0;
-		for (Double angle : jointAngles) {
-			totalAngle += angle;
-			double x2 = x1 + LINK_LENGTH * Math.cos(totalAngle);
-			double y2 = y1 + LINK_LENGTH * Math.sin(totalAngle);
-			links.add(new Line2D.Double(x1, y1, x2, y2));
-			x1 = x2;
-			y1 = y2;
+		for (int i = 0; i < k; i++) {
+			totalAngle += angles[i];
+			if (onGrid) {
+				int steps = TrigTable.gridIndex(angles[i]);
+				onGrid = steps != TrigTable.OFF_GRID;
+				totalSteps += steps;
+			}
+		}
+		double x1 = joints[2 * k];
+		double y1 = joints[2 * k + 1];
+		for (int i = k; i < angles.length; i++) {
+			totalAngle += angles[i];
+			if (onGrid) {
+				int steps = TrigTable.gridIndex(angles[i]);
+				onGrid = steps != TrigTable.OFF_GRID;
+				totalSteps += steps;
+			}
+			if (onGrid) {
+				x1 = x1 + LINK_LENGTH * TrigTable.cos(totalSteps);
+				y1 = y1 + LINK_LENGTH * TrigTable.sin(totalSteps);
+			} else {
+				x1 = x1 + LINK_LENGTH * Math.cos(totalAngle);
+				y1 = y1 + LINK_LENGTH * Math.sin(totalAngle);
+			}
+			joints[2 * i + 2] = x1;
+			joints[2 * i + 3] = y1;
 		}
 	}
 }
@@ -0,0 +1,449 @@
+package problem;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads problem and solution text files line by line, parsing numbers
+ * straight from the bytes of a reusable buffer. Nothing is allocated per
+ * line or per number except the configurations returned.
+ *
+ * Tokens are separated by spaces, tabs and carriage returns; lines end with
+ * '\n'. Errors are reported as IOExceptions whose messages carry the line
+ * number, in the same wording ProblemSpec has always used.
+ */
+public class ConfigReader implements Closeable {
+	/** Initial buffer size; the buffer grows if a token doesn't fit */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** The file, or null once it has been read to the end */
+	private FileChannel channel;
+	/** Bytes read from the file; the unread ones are [pos, limit) */
+	private byte[] buf = new byte[BUFFER_SIZE];
+	private int pos;
+	private int limit;
+	/** Number of the current line, counting from 1 */
+	private int lineNo;
+	/** Whether a line has been started and its '\n' not yet consumed */
+	private boolean inLine;
+	/** Start of the last token read, in buf */
+	private int tokenStart;
+	/** Joint angles of the configuration being read */
+	private double[] angles = new double[16];
+
+	/**
+	 * Opens a file for reading.
+	 *
+	 * @param filename
+	 *            the path of the file.
+	 * @throws IOException
+	 *             if the file can't be opened.
+	 */
+	public ConfigReader(String filename) throws IOException {
+		try {
+			channel = FileChannel.open(Paths.get(filename),
+					StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			throw new FileNotFoundException(filename
+					+ " (No such file or directory)");
+		}
+	}
+
+	/**
+	 * Advances to the next line. Any unread tokens of the current line are
+	 * skipped.
+	 *
+	 * @return false if the file has ended, i.e. there is no next line.
+	 * @throws IOException
+	 *             if the file can't be read.
+	 */
+	public boolean nextLine() throws IOException {
+		if (inLine) {
+			while (true) {
+				if (pos == limit && !fill()) {
+					break;
+				}
+				if (buf[pos++] == '\n') {
+					break;
+				}
+			}
+		}
+		lineNo++;
+		inLine = pos < limit || fill();
+		return inLine;
+	}
+
+	/**
+	 * Advances to the next line, which must exist.
+	 *
+	 * @throws IOException
+	 *             if the file has ended or can't be read.
+	 */
+	public void expectLine() throws IOException {
+		if (!nextLine()) {
+			throw new IOException(String.format(
+					"Line %d expected, but file ended.", lineNo));
+		}
+	}
+
+	/**
+	 * Returns the number of the current line.
+	 *
+	 * @return the line number, counting from 1.
+	 */
+	public int getLineNo() {
+		return lineNo;
+	}
+
+	/**
+	 * Returns whether the current line has another token.
+	 *
+	 * @return whether a token follows on the current line.
+	 * @throws IOException
+	 *             if the file can't be read.
+	 */
+	public boolean hasNext() throws IOException {
+		while (pos < limit || fill()) {
+			byte b = buf[pos];
+			if (b == '\n') {
+				return false;
+			} else if (!isSpace(b)) {
+				return true;
+			}
+			pos++;
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the next token of the current line as an int.
+	 *
+	 * @return the value.
+	 * @throws IOException
+	 *             if there is no token, it isn't an int, or the file can't be
+	 *             read.
+	 */
+	public int nextInt() throws IOException {
+		int end = nextToken();
+		int i = tokenStart;
+		boolean negative = buf[i] == '-';
+		if (negative || buf[i] == '+') {
+			i++;
+		}
+		long value = 0;
+		if (i == end || end - i > 10) {
+			throw invalidToken(end);
+		}
+		for (; i < end; i++) {
+			int digit = buf[i] - '0';
+			if (digit < 0 || digit > 9) {
+				throw invalidToken(end);
+			}
+			value = value * 10 + digit;
+		}
+		value = negative ? -value : value;
+		if (value != (int) value) {
+			throw invalidToken(end);
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Reads the next token of the current line as a double.
+	 *
+	 * @return the value.
+	 * @throws IOException
+	 *             if there is no token, it isn't a number, or the file can't
+	 *             be read.
+	 */
+	public double nextDouble() throws IOException {
+		int end = nextToken();
+		try {
+			return parseDouble(buf, tokenStart, end);
+		} catch (NumberFormatException e) {
+			throw invalidToken(end);
+		}
+	}
+
+	/**
+	 * Reads the rest of the current line as a configuration: the base x and
+	 * y coordinates followed by the joint angles. Reading stops at the end
+	 * of the line or at the first token that isn't a number.
+	 *
+	 * @return the configuration.
+	 * @throws IOException
+	 *             if the base coordinates are missing or invalid, or the file
+	 *             can't be read.
+	 */
+	public ArmConfig nextConfig() throws IOException {
+		double x = nextDouble();
+		double y = nextDouble();
+		int count = 0;
+		while (hasNext()) {
+			int end = nextToken();
+			try {
+				double angle = parseDouble(buf, tokenStart, end);
+				if (count == angles.length) {
+					angles = Arrays.copyOf(angles, count * 2);
+				}
+				angles[count++] = angle;
+			} catch (NumberFormatException e) {
+				break;
+			}
+		}
+		return new ArmConfig(x, y, Arrays.copyOf(angles, count));
+	}
+
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+	/**
+	 * Finds the next token of the current line, which starts at tokenStart,
+	 * and returns its end.
+	 */
+	private int nextToken() throws IOException {
+		if (!hasNext()) {
+			throw new IOException(String.format("Not enough tokens on line %d",
+					lineNo));
+		}
+		tokenStart = pos;
+		while (true) {
+			if (pos == limit) {
+				boolean more = fill(tokenStart);
+				tokenStart = 0;
+				if (!more) {
+					return pos;
+				}
+			}
+			byte b = buf[pos];
+			if (b == '\n' || isSpace(b)) {
+				return pos;
+			}
+			pos++;
+		}
+	}
+
+	/** Reads more of the file; returns false if nothing more could be read */
+	private boolean fill() throws IOException {
+		return fill(pos);
+	}
+
+	/**
+	 * Moves buf[keepFrom, limit) to the front of the buffer, then reads more
+	 * of the file after it. Returns false if nothing more could be read.
+	 */
+	private boolean fill(int keepFrom) throws IOException {
+		System.arraycopy(buf, keepFrom, buf, 0, limit - keepFrom);
+		limit -= keepFrom;
+		pos -= keepFrom;
+		if (channel == null) {
+			return false;
+		}
+		if (limit == buf.length) {
+			buf = Arrays.copyOf(buf, buf.length * 2);
+		}
+		int n = channel.read(ByteBuffer.wrap(buf, limit, buf.length - limit));
+		if (n <= 0) {
+			close();
+			return false;
+		}
+		limit += n;
+		return true;
+	}
+
+	private IOException invalidToken(int end) {
+		return new IOException(String.format(
+				"Invalid number format on line %d: %s", lineNo, new String(buf,
+						tokenStart, end - tokenStart, StandardCharsets.ISO_8859_1)));
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+	}
+
+	/** Exact powers of ten that are representable as doubles */
+	private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6,
+			1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18,
+			1e19, 1e20, 1e21, 1e22 };
+	/** Range of decimal exponents covered by the power of five tables */
+	private static final int MIN_POW5 = -342;
+	private static final int MAX_POW5 = 308;
+	/** High and low 64 bits of 5^q, normalised to 128 bits (see pow5) */
+	private static final long[] POW5_HI = new long[MAX_POW5 - MIN_POW5 + 1];
+	private static final long[] POW5_LO = new long[MAX_POW5 - MIN_POW5 + 1];
+
+	static {
+		BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+		for (int q = MIN_POW5; q <= MAX_POW5; q++) {
+			BigInteger c;
+			if (q >= 0) {
+				c = BigInteger.valueOf(5).pow(q);
+				int shift = 128 - c.bitLength();
+				c = shift >= 0 ? c.shiftLeft(shift) : c.shiftRight(-shift);
+			} else {
+				// A truncated 128-bit reciprocal, rounded up
+				BigInteger p = BigInteger.valueOf(5).pow(-q);
+				int z = p.bitLength();
+				int b = q >= -27 ? z + 127 : 2 * z + 128;
+				c = BigInteger.ONE.shiftLeft(b).divide(p).add(BigInteger.ONE);
+				c = c.shiftRight(Math.max(c.bitLength() - 128, 0));
+			}
+			POW5_HI[q - MIN_POW5] = c.shiftRight(64).longValue();
+			POW5_LO[q - MIN_POW5] = c.and(mask).longValue();
+		}
+	}
+
+	/**
+	 * Parses a decimal number in the syntax of Double.parseDouble, rounding
+	 * correctly. Plain decimals with up to 19 significant digits are parsed
+	 * directly, using exact double arithmetic when the digits and exponent
+	 * are small enough and the Eisel-Lemire algorithm otherwise; anything
+	 * else is handed to Double.parseDouble.
+	 *
+	 * @param b
+	 *            the bytes holding the number.
+	 * @param start
+	 *            the index of the first byte.
+	 * @param end
+	 *            the index after the last byte.
+	 * @return the value.
+	 * @throws NumberFormatException
+	 *             if the bytes are not a number.
+	 */
+	public static double parseDouble(byte[] b, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (b[i] == '-' || b[i] == '+')) {
+			negative = b[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean exact = true;
+		boolean any = false;
+		for (; i < end && b[i] >= '0' && b[i] <= '9'; i++) {
+			any = true;
+			int d = b[i] - '0';
+			if (digits < 19) {
+				mantissa = mantissa * 10 + d;
+				digits += mantissa == 0 ? 0 : 1;
+			} else {
+				exponent++;
+				exact &= d == 0;
+			}
+		}
+		if (i < end && b[i] == '.') {
+			for (i++; i < end && b[i] >= '0' && b[i] <= '9'; i++) {
+				any = true;
+				int d = b[i] - '0';
+				if (digits < 19) {
+					mantissa = mantissa * 10 + d;
+					digits += mantissa == 0 ? 0 : 1;
+					exponent--;
+				} else {
+					exact &= d == 0;
+				}
+			}
+		}
+		if (any && i < end && (b[i] == 'e' || b[i] == 'E')) {
+			i++;
+			boolean negativeExp = false;
+			if (i < end && (b[i] == '-' || b[i] == '+')) {
+				negativeExp = b[i] == '-';
+				i++;
+			}
+			int exp = 0;
+			boolean expDigits = false;
+			for (; i < end && b[i] >= '0' && b[i] <= '9'; i++) {
+				expDigits = true;
+				exp = Math.min(exp * 10 + (b[i] - '0'), 100000);
+			}
+			any = expDigits;
+			exponent += negativeExp ? -exp : exp;
+		}
+		if (!any || i != end || !exact) {
+			return Double.parseDouble(new String(b, start, end - start,
+					StandardCharsets.ISO_8859_1));
+		}
+		double value;
+		if (mantissa == 0) {
+			value = 0;
+		} else if (mantissa > 0 && mantissa < 1L << 53 && exponent >= -22
+				&& exponent <= 22) {
+			value = exponent >= 0 ? mantissa * POW10[exponent] : mantissa
+					/ POW10[-exponent];
+		} else {
+			value = eiselLemire(mantissa, exponent);
+			if (Double.isNaN(value)) {
+				return Double.parseDouble(new String(b, start, end - start,
+						StandardCharsets.ISO_8859_1));
+			}
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Returns w * 10^q correctly rounded for non-zero w (unsigned), or NaN if that
+	 * can't be decided cheaply or the result is subnormal or infinite.
+	 */
+	private static double eiselLemire(long w, int q) {
+		if (q < MIN_POW5 || q > MAX_POW5) {
+			return Double.NaN;
+		}
+		int lz = Long.numberOfLeadingZeros(w);
+		w <<= lz;
+		int index = q - MIN_POW5;
+		long hi = unsignedMultiplyHigh(w, POW5_HI[index]);
+		long lo = w * POW5_HI[index];
+		if ((hi & 0x1FF) == 0x1FF) {
+			long secondHi = unsignedMultiplyHigh(w, POW5_LO[index]);
+			lo += secondHi;
+			if (Long.compareUnsigned(secondHi, lo) > 0) {
+				hi++;
+			}
+		}
+		if (lo == -1L && (q < -27 || q > 55)) {
+			return Double.NaN;
+		}
+		int upperBit = (int) (hi >>> 63);
+		long m = hi >>> (upperBit + 9);
+		int power2 = (((152170 + 65536) * q) >> 16) + 63 + upperBit - lz + 1023;
+		if (power2 <= 0) {
+			return Double.NaN;
+		}
+		if (Long.compareUnsigned(lo, 1) <= 0 && q >= -4 && q <= 23
+				&& (m & 3) == 1 && (m << (upperBit + 9)) == hi) {
+			// Exactly halfway: round to even rather than up
+			m &= ~1L;
+		}
+		m += m & 1;
+		m >>>= 1;
+		if (m >= 2L << 52) {
+			m = 1L << 52;
+			power2++;
+		}
+		m &= ~(1L << 52);
+		if (power2 >= 0x7FF) {
+			return Double.NaN;
+		}
+		return Double.longBitsToDouble(m | ((long) power2 << 52));
+	}
+
+	private static long unsignedMultiplyHigh(long a, long b) {
+		return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+	}
+}
@@ -1,14 +1,9 @@
 package problem;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.InputMismatchException;
 import java.util.List;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
 
 /**
  * This class represents the specifications of a given problem and solution;
@@ -49,60 +44,46 @@ public class ProblemSpec {
 	public void loadProblem(String filename) throws IOException {
 		problemLoaded = false;
 		solutionLoaded = false;
-		BufferedReader input = new BufferedReader(new FileReader(filename));
-		String line;
-		int lineNo = 0;
-		Scanner s;
+		ConfigReader input = new ConfigReader(filename);
 		try {
-			line = input.readLine();
-			lineNo++;
-			initialState = new ArmConfig(line);
+			input.expectLine();
+			initialState = input.nextConfig();
 			
-			line = input.readLine();
-			lineNo++;
-			goalState = new ArmConfig(line);
+			input.expectLine();
+			goalState = input.nextConfig();
 			
 			if (initialState.getJointCount() != goalState.getJointCount()) {
 				throw new IOException(
 						"Mismatch between initial and goal joint count.");
 			}
 
-			line = input.readLine();
-			lineNo++;
-			s = new Scanner(line);
-			int numObstacles = s.nextInt();
-			s.close();
+			input.expectLine();
+			int numObstacles = input.nextInt();
 
 			obstacles = new ArrayList<Obstacle>();
 			for (int i = 0; i < numObstacles; i++) {
-				line = input.readLine();
-				lineNo++;
-				obstacles.add(new Obstacle(line));
+				input.expectLine();
+				double xMin = input.nextDouble();
+				double yMax = input.nextDouble();
+				double xMax = input.nextDouble();
+				double yMin = input.nextDouble();
+				obstacles.add(new Obstacle(xMin, yMin, xMax - xMin, yMax - yMin));
 			}
 
 			problemLoaded = true;
-		} catch (InputMismatchException e) {
-			throw new IOException(String.format(
-					"Invalid number format on line %d: %s", lineNo,
-					e.getMessage()));
-		} catch (NoSuchElementException e) {
-			throw new IOException(String.format("Not enough tokens on line %d",
-					lineNo));
-		} catch (NullPointerException e) {
-			throw new IOException(String.format(
-					"Line %d expected, but file ended.", lineNo));
 		} finally {
 			input.close();
 		}
 	}
 
 	/**
-	 * Loads a solution from a solution text file.
+	 * Loads a solution from a solution file, in either the text format or the
+	 * binary format of SolutionCodec.
 	 * 
 	 * @param filename
-	 *            the path of the text file to load.
+	 *            the path of the file to load.
 	 * @throws IOException
-	 *             if the text file doesn't exist or doesn't meet the assignment
+	 *             if the file doesn't exist or doesn't meet the assignment
 	 *             specifications.
 	 */
 	public void loadSolution(String filename) throws IOException {
@@ -110,34 +91,29 @@ public class ProblemSpec {
 			return;
 		}
 		solutionLoaded = false;
-		BufferedReader input = new BufferedReader(new FileReader(filename));
-		String line;
-		int lineNo = 0;
-		Scanner s;
-		try {
-			line = input.readLine();
-			lineNo++;
-			s = new Scanner(line);
-			int pathLength = s.nextInt() + 1;
-			s.close();
+		path = readSolution(filename);
+		solutionLoaded = true;
+	}
 
-			path = new ArrayList<ArmConfig>();
-			for (int i = 0; i < pathLength; i++) {
-				line = input.readLine();
-				lineNo++;
-				path.add(new ArmConfig(line));
+	/**
+	 * Reads the path from a solution file, in either the text format or the
+	 * binary format of SolutionCodec.
+	 * 
+	 * @param filename
+	 *            the path of the file to load.
+	 * @return the configurations of the path, including both ends.
+	 * @throws IOException
+	 *             if the file doesn't exist or is malformed.
+	 */
+	public static List<ArmConfig> readSolution(String filename)
+			throws IOException {
+		SolutionReader input = SolutionReader.open(filename);
+		try {
+			List<ArmConfig> path = new ArrayList<ArmConfig>(input.getStateCount());
+			while (input.hasNext()) {
+				path.add(input.next());
 			}
-			solutionLoaded = true;
-		} catch (InputMismatchException e) {
-			throw new IOException(String.format(
-					"Invalid number format on line %d: %s", lineNo,
-					e.getMessage()));
-		} catch (NoSuchElementException e) {
-			throw new IOException(String.format("Not enough tokens on line %d",
-					lineNo));
-		} catch (NullPointerException e) {
-			throw new IOException(String.format(
-					"Line %d expected, but file ended.", lineNo));
+			return path;
 		} finally {
 			input.close();
 		}
@@ -156,13 +132,48 @@ public class ProblemSpec {
 		if (!problemLoaded || !solutionLoaded) {
 			return;
 		}
+		saveSolution(path, filename);
+	}
+
+	/**
+	 * Saves the given path to a solution text file, in the format read by
+	 * loadSolution.
+	 * 
+	 * @param path
+	 *            the configurations of the path, including both ends.
+	 * @param filename
+	 *            the path of the text file to save to.
+	 * @throws IOException
+	 *             if the text file cannot be written.
+	 */
+	public static void saveSolution(List<ArmConfig> path, String filename)
+			throws IOException {
 		String ls = System.getProperty("line.separator");
 		FileWriter output = new FileWriter(filename);
-		output.write(String.format("%d %f%s", path.size() - 1, ls));
-		for (ArmConfig cfg : path) {
-			output.write(cfg + ls);
+		try {
+			output.write(String.format("%d%s", path.size() - 1, ls));
+			for (ArmConfig cfg : path) {
+				output.write(cfg + ls);
+			}
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Saves the current solution to a binary solution file; see
+	 * SolutionCodec.
+	 * 
+	 * @param filename
+	 *            the path of the file to save to.
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	public void saveBinarySolution(String filename) throws IOException {
+		if (!problemLoaded || !solutionLoaded) {
+			return;
 		}
-		output.close();
+		SolutionCodec.write(path, filename);
 	}
 
 	/**
@@ -0,0 +1,254 @@
+package problem;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import tester.Tester;
+
+/**
+ * Reads and writes solutions in a compact binary format. Consecutive states
+ * of a solution differ by at most one primitive step on each coordinate, so
+ * rather than printing every value in full, the format stores the first
+ * state exactly and then, for every later state, the change in each
+ * coordinate quantised to a small unit and packed into a variable number of
+ * bytes.
+ *
+ * The file starts with the header
+ * <pre>
+ *   int    MAGIC
+ *   byte   VERSION
+ *   int    joint count
+ *   int    step count (the number of states minus one, as in a text file)
+ *   double base quantum
+ *   double angle quantum
+ *   double base x, base y and each joint angle of the first state
+ * </pre>
+ * followed, for each later state, by one zigzag varint per coordinate: the
+ * base x, base y and then each joint angle. All values are big-endian.
+ * SolutionReader decodes the format one state at a time.
+ *
+ * Every coordinate v of state i is stored as the whole number of quanta
+ * k(i) = round((v - v(0)) / quantum) from the first state, and the varint is
+ * k(i) - k(i - 1). The decoded value v(0) + quantum * k(i) is therefore
+ * within half a quantum of the original, and the error does not build up
+ * along the path. It does build up along the arm, though: an error of e in
+ * joint k moves the joints beyond it by up to (n - k) * LINK_LENGTH * e, so
+ * with n joints the last endpoint may move by n(n + 1) / 4 * LINK_LENGTH
+ * times the angle quantum. The default angle quantum is therefore chosen
+ * per file from the joint count, by angleQuantum, so that the endpoint
+ * error stays within MAX_ENDPOINT_ERROR, a hundredth of
+ * Tester.DEFAULT_MAX_ERROR, for any number of joints.
+ */
+public class SolutionCodec {
+	/** The first four bytes of a binary solution file, "ARMB" */
+	public static final int MAGIC = 0x41524D42;
+	/** The format version written by this class */
+	public static final byte VERSION = 1;
+	/** Largest endpoint movement the default quanta may cause */
+	public static final double MAX_ENDPOINT_ERROR = Tester.DEFAULT_MAX_ERROR / 100;
+	/**
+	 * The default quantum for base coordinates, 2^-24; half a quantum on
+	 * each coordinate moves the base by under half of MAX_ENDPOINT_ERROR
+	 */
+	public static final double BASE_QUANTUM = 0x1p-24;
+
+	/**
+	 * Returns whether a file is a binary solution file, i.e. starts with
+	 * MAGIC.
+	 *
+	 * @param filename
+	 *            the path of the file.
+	 * @return true if the file is in the binary format.
+	 * @throws IOException
+	 *             if the file cannot be read.
+	 */
+	public static boolean isBinary(String filename) throws IOException {
+		FileInputStream input = new FileInputStream(filename);
+		try {
+			int magic = 0;
+			for (int i = 0; i < 4; i++) {
+				int b = input.read();
+				if (b < 0) {
+					return false;
+				}
+				magic = (magic << 8) | b;
+			}
+			return magic == MAGIC;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Reads a binary solution file.
+	 *
+	 * @param filename
+	 *            the path of the file.
+	 * @return the states of the solution, including both ends.
+	 * @throws IOException
+	 *             if the file cannot be read or is malformed.
+	 */
+	public static List<ArmConfig> read(String filename) throws IOException {
+		if (!isBinary(filename)) {
+			throw new IOException("Not a binary solution file.");
+		}
+		return ProblemSpec.readSolution(filename);
+	}
+
+	/**
+	 * Returns the default quantum for the joint angles of an arm with the
+	 * given number of joints: the largest power of two for which the angle
+	 * rounding moves no endpoint by more than half of MAX_ENDPOINT_ERROR.
+	 *
+	 * @param jointCount
+	 *            the number of joints.
+	 * @return the angle quantum in radians.
+	 */
+	public static double angleQuantum(int jointCount) {
+		double reach = Math.max(1, jointCount * (jointCount + 1.0) / 4)
+				* ArmConfig.LINK_LENGTH;
+		return Math.scalb(1.0, Math.getExponent(MAX_ENDPOINT_ERROR / 2 / reach));
+	}
+
+	/**
+	 * Writes a path as a binary solution file with the default quanta.
+	 *
+	 * @param path
+	 *            the configurations of the path, including both ends.
+	 * @param filename
+	 *            the path of the file to write.
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	public static void write(List<ArmConfig> path, String filename)
+			throws IOException {
+		int jointCount = path.isEmpty() ? 0 : path.get(0).getJointCount();
+		write(path, filename, BASE_QUANTUM, angleQuantum(jointCount));
+	}
+
+	/**
+	 * Writes a path as a binary solution file.
+	 *
+	 * @param path
+	 *            the configurations of the path, including both ends; all
+	 *            must have the same number of joints.
+	 * @param filename
+	 *            the path of the file to write.
+	 * @param baseQuantum
+	 *            the unit base coordinates are rounded to.
+	 * @param angleQuantum
+	 *            the unit joint angles are rounded to, in radians.
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	public static void write(List<ArmConfig> path, String filename,
+			double baseQuantum, double angleQuantum) throws IOException {
+		if (path.isEmpty()) {
+			throw new IOException("Cannot write an empty path.");
+		}
+		ArmConfig start = path.get(0);
+		int jointCount = start.getJointCount();
+		int dims = 2 + jointCount;
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(filename), 1 << 16));
+		try {
+			output.writeInt(MAGIC);
+			output.writeByte(VERSION);
+			output.writeInt(jointCount);
+			output.writeInt(path.size() - 1);
+			output.writeDouble(baseQuantum);
+			output.writeDouble(angleQuantum);
+			for (int d = 0; d < dims; d++) {
+				output.writeDouble(coordinate(start, d));
+			}
+
+			long[] steps = new long[dims];
+			for (int i = 1; i < path.size(); i++) {
+				ArmConfig cfg = path.get(i);
+				if (cfg.getJointCount() != jointCount) {
+					throw new IOException(String.format(
+							"State %d has %d joints, expected %d.", i,
+							cfg.getJointCount(), jointCount));
+				}
+				for (int d = 0; d < dims; d++) {
+					double quantum = d < 2 ? baseQuantum : angleQuantum;
+					long k = Math.round((coordinate(cfg, d) - coordinate(start, d))
+							/ quantum);
+					writeVarLong(output, k - steps[d]);
+					steps[d] = k;
+				}
+			}
+		} finally {
+			output.close();
+		}
+	}
+
+	/** Returns coordinate d of a configuration: base x, base y, then angles */
+	private static double coordinate(ArmConfig cfg, int d) {
+		if (d == 0) {
+			return cfg.baseX();
+		} else if (d == 1) {
+			return cfg.baseY();
+		}
+		return cfg.angle(d - 2);
+	}
+
+	/** Writes a signed value as a zigzag-encoded varint */
+	private static void writeVarLong(DataOutputStream output, long value)
+			throws IOException {
+		long v = (value << 1) ^ (value >> 63);
+		while ((v & ~0x7FL) != 0) {
+			output.writeByte((int) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		output.writeByte((int) v);
+	}
+
+	/**
+	 * Converts a solution file between the text and binary formats; the
+	 * direction is chosen from the format of the input file. When converting
+	 * to binary, reports the largest link endpoint error introduced by the
+	 * quantisation.
+	 *
+	 * @param args
+	 *            the input file and the output file.
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.out.println("Usage: solutioncodec input-file output-file");
+			System.exit(1);
+		}
+		try {
+			long start = System.nanoTime();
+			List<ArmConfig> path = ProblemSpec.readSolution(args[0]);
+			double loadTime = (System.nanoTime() - start) / 1e6;
+			if (isBinary(args[0])) {
+				ProblemSpec.saveSolution(path, args[1]);
+			} else {
+				write(path, args[1]);
+				List<ArmConfig> decoded = read(args[1]);
+				double maxError = 0;
+				for (int i = 0; i < path.size(); i++) {
+					maxError = Math.max(maxError,
+							path.get(i).maxDistance(decoded.get(i)));
+				}
+				System.out.println(String.format("Max endpoint error: %g",
+						maxError));
+			}
+			long inSize = new File(args[0]).length();
+			long outSize = new File(args[1]).length();
+			System.out.println(String.format(
+					"%d states; %d bytes -> %d bytes (%.1fx); loaded in %.2f ms",
+					path.size(), inSize, outSize, (double) inSize / outSize,
+					loadTime));
+		} catch (IOException e) {
+			System.out.println("Conversion failed: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package problem;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Reads the states of a solution file one at a time, in either the text
+ * format or the binary format of SolutionCodec, so that a path can be
+ * processed without holding it all in memory. Used like an iterator:
+ *
+ * <pre>
+ * SolutionReader input = SolutionReader.open(filename);
+ * try {
+ *     while (input.hasNext()) {
+ *         ArmConfig cfg = input.next();
+ *         ...
+ *     }
+ * } finally {
+ *     input.close();
+ * }
+ * </pre>
+ *
+ * Unlike java.util.Iterator, next() throws IOException when the file is
+ * malformed, with the same messages as ProblemSpec.readSolution.
+ */
+public abstract class SolutionReader implements Closeable {
+	/** The number of states the file declares */
+	protected int stateCount;
+	/** The number of states read so far */
+	protected int statesRead;
+
+	/**
+	 * Opens a solution file, detecting its format.
+	 *
+	 * @param filename
+	 *            the path of the file.
+	 * @return a reader positioned before the first state.
+	 * @throws IOException
+	 *             if the file doesn't exist or its header is malformed.
+	 */
+	public static SolutionReader open(String filename) throws IOException {
+		if (SolutionCodec.isBinary(filename)) {
+			return new Binary(filename);
+		}
+		return new Text(filename);
+	}
+
+	/**
+	 * Returns the number of states in the path, including both ends, as
+	 * declared at the start of the file.
+	 *
+	 * @return the number of states.
+	 */
+	public int getStateCount() {
+		return stateCount;
+	}
+
+	/**
+	 * Returns whether there are more states to read.
+	 *
+	 * @return whether next() will return another state.
+	 */
+	public boolean hasNext() {
+		return statesRead < stateCount;
+	}
+
+	/**
+	 * Reads the next state.
+	 *
+	 * @return the next state of the path.
+	 * @throws IOException
+	 *             if the file ends early, is malformed or can't be read.
+	 */
+	public ArmConfig next() throws IOException {
+		ArmConfig cfg = read();
+		statesRead++;
+		return cfg;
+	}
+
+	/** Reads the next state, which the caller has checked exists */
+	protected abstract ArmConfig read() throws IOException;
+
+	/** Reads the text format through ConfigReader */
+	private static class Text extends SolutionReader {
+		private ConfigReader input;
+
+		Text(String filename) throws IOException {
+			input = new ConfigReader(filename);
+			try {
+				input.expectLine();
+				stateCount = Math.max(input.nextInt() + 1, 0);
+			} catch (IOException e) {
+				input.close();
+				throw e;
+			}
+		}
+
+		protected ArmConfig read() throws IOException {
+			input.expectLine();
+			return input.nextConfig();
+		}
+
+		public void close() throws IOException {
+			input.close();
+		}
+	}
+
+	/** Reads the binary format of SolutionCodec */
+	private static class Binary extends SolutionReader {
+		private DataInputStream input;
+		private int jointCount;
+		/** Base x, base y, then each angle of the first state */
+		private double[] first;
+		/** The quantum of each coordinate */
+		private double[] quantum;
+		/** Quanta of each coordinate from the first state */
+		private long[] steps;
+		private double[] angles;
+
+		Binary(String filename) throws IOException {
+			input = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(filename), 1 << 16));
+			try {
+				readHeader();
+			} catch (EOFException e) {
+				input.close();
+				throw new IOException("Binary solution header is truncated.");
+			} catch (IOException e) {
+				input.close();
+				throw e;
+			}
+		}
+
+		private void readHeader() throws IOException {
+			if (input.readInt() != SolutionCodec.MAGIC) {
+				throw new IOException("Not a binary solution file.");
+			}
+			byte version = input.readByte();
+			if (version != SolutionCodec.VERSION) {
+				throw new IOException(String.format(
+						"Unsupported binary solution version %d.", version));
+			}
+			jointCount = input.readInt();
+			stateCount = input.readInt() + 1;
+			if (jointCount < 0 || stateCount < 1) {
+				throw new IOException(String.format(
+						"Invalid header: %d joints, %d states.", jointCount,
+						stateCount));
+			}
+			double baseQuantum = input.readDouble();
+			double angleQuantum = input.readDouble();
+			int dims = 2 + jointCount;
+			first = new double[dims];
+			quantum = new double[dims];
+			steps = new long[dims];
+			for (int d = 0; d < dims; d++) {
+				first[d] = input.readDouble();
+				quantum[d] = d < 2 ? baseQuantum : angleQuantum;
+			}
+			angles = new double[jointCount];
+		}
+
+		protected ArmConfig read() throws IOException {
+			try {
+				if (statesRead > 0) {
+					for (int d = 0; d < steps.length; d++) {
+						steps[d] += readVarLong();
+					}
+				}
+			} catch (EOFException e) {
+				throw new IOException(String.format(
+						"Binary solution file ended after %d of %d states.",
+						statesRead, stateCount));
+			}
+			for (int j = 0; j < jointCount; j++) {
+				angles[j] = first[2 + j] + quantum[2 + j] * steps[2 + j];
+			}
+			return new ArmConfig(first[0] + quantum[0] * steps[0], first[1]
+					+ quantum[1] * steps[1], angles);
+		}
+
+		/** Reads a signed value written by SolutionCodec.writeVarLong */
+		private long readVarLong() throws IOException {
+			long v = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = input.readByte();
+				v |= (long) (b & 0x7F) << shift;
+				if (b >= 0) {
+					return (v >>> 1) ^ -(v & 1);
+				}
+			}
+			throw new IOException("Malformed varint in binary solution file.");
+		}
+
+		public void close() throws IOException {
+			input.close();
+		}
+	}
+}
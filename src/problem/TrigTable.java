@@ -0,0 +1,88 @@
+package problem;
+
+/**
+ * Sines and cosines of whole multiples of the primitive joint step, 0.1
+ * degrees. A joint angle that is such a multiple is "on the grid", and the
+ * sum of on-grid angles is on the grid too, so forward kinematics of on-grid
+ * configurations only ever needs these values.
+ *
+ * To keep the tables small enough to stay in cache, an angle of k steps is
+ * split into whole degrees and a remainder of fewer than ten steps, each
+ * looked up in its own table, and the two are combined with the angle
+ * addition formulas. The result is within a few ulps of Math.cos/Math.sin.
+ */
+public class TrigTable {
+	/** The primitive joint step in radians, as Tester.MAX_JOINT_STEP */
+	public static final double STEP = 0.1 * Math.PI / 180.0;
+	/** Number of steps in a full turn */
+	public static final int STEPS_PER_TURN = 3600;
+	/** Largest distance from a multiple of STEP, in steps, still on the grid */
+	public static final double GRID_TOLERANCE = 1e-9;
+	/** Returned by gridIndex for angles that are not on the grid */
+	public static final int OFF_GRID = Integer.MIN_VALUE;
+
+	/** Steps per radian */
+	private static final double INV_STEP = 1 / STEP;
+	/** Number of steps per coarse table entry, i.e. one degree */
+	private static final int FINE = 10;
+	private static final double[] COARSE_COS = new double[STEPS_PER_TURN / FINE];
+	private static final double[] COARSE_SIN = new double[STEPS_PER_TURN / FINE];
+	private static final double[] FINE_COS = new double[FINE];
+	private static final double[] FINE_SIN = new double[FINE];
+
+	static {
+		for (int i = 0; i < COARSE_COS.length; i++) {
+			COARSE_COS[i] = Math.cos(i * FINE * STEP);
+			COARSE_SIN[i] = Math.sin(i * FINE * STEP);
+		}
+		for (int i = 0; i < FINE; i++) {
+			FINE_COS[i] = Math.cos(i * STEP);
+			FINE_SIN[i] = Math.sin(i * STEP);
+		}
+	}
+
+	/**
+	 * Returns the number of steps k with angle = k * STEP, if the angle is on
+	 * the grid.
+	 *
+	 * @param angle
+	 *            an angle in radians.
+	 * @return the number of steps, or OFF_GRID.
+	 */
+	public static int gridIndex(double angle) {
+		double q = angle * INV_STEP;
+		double k = Math.rint(q);
+		if (Math.abs(q - k) > GRID_TOLERANCE || Math.abs(k) > Integer.MAX_VALUE / 2) {
+			return OFF_GRID;
+		}
+		return (int) k;
+	}
+
+	/**
+	 * Returns the cosine of k steps.
+	 *
+	 * @param k
+	 *            the number of steps.
+	 * @return cos(k * STEP).
+	 */
+	public static double cos(int k) {
+		k = Math.floorMod(k, STEPS_PER_TURN);
+		int c = k / FINE;
+		int f = k % FINE;
+		return COARSE_COS[c] * FINE_COS[f] - COARSE_SIN[c] * FINE_SIN[f];
+	}
+
+	/**
+	 * Returns the sine of k steps.
+	 *
+	 * @param k
+	 *            the number of steps.
+	 * @return sin(k * STEP).
+	 */
+	public static double sin(int k) {
+		k = Math.floorMod(k, STEPS_PER_TURN);
+		int c = k / FINE;
+		int f = k % FINE;
+		return COARSE_SIN[c] * FINE_COS[f] + COARSE_COS[c] * FINE_SIN[f];
+	}
+}
@@ -0,0 +1,113 @@
+package tester;
+
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Batch obstacle collision test for many configurations at once. The
+ * configurations are given in structure-of-arrays layout, as the joint
+ * coordinates of every state (one array per joint for the x coordinates and
+ * one for the y coordinates), and are processed in blocks of 64 states, one
+ * word of the result each. For each link, the obstacles that ObstacleIndex
+ * lists near that link in any state of the block are looked up once, and
+ * each is then compared with the link of every state by a branch-free
+ * bounding box test; only the links whose boxes meet the obstacle are
+ * passed to Rectangle2D.intersectsLine.
+ *
+ * The rectangles are those of the index, shrunk by maxError, and a segment
+ * whose bounding box misses a rectangle is one that intersectsLine rejects
+ * by its outcodes alone, so the results are identical to
+ * Tester.hasCollision. A kernel keeps scratch space, so it must only be
+ * used by one thread at a time.
+ */
+public class CollisionKernel {
+	/** Number of states per block: one word of the result */
+	public static final int BLOCK = 64;
+
+	/** The obstacles, shrunk by maxError */
+	private ObstacleIndex index;
+	/** Ids of the obstacles near the current link */
+	private int[] found;
+	/** Whether the current link of each state of the block may touch */
+	private boolean[] near = new boolean[BLOCK];
+
+	/**
+	 * Constructs a kernel for the obstacles in the given index.
+	 *
+	 * @param index
+	 *            the obstacles, indexed with the tester's maximum error.
+	 */
+	public CollisionKernel(ObstacleIndex index) {
+		this.index = index;
+		this.found = new int[index.getObstacleCount()];
+	}
+
+	/**
+	 * Returns which of the given states collide with an obstacle.
+	 *
+	 * @param jointX
+	 *            jointX[i][s] is the x coordinate of joint i of state s,
+	 *            numbered as for ArmConfig.jointX.
+	 * @param jointY
+	 *            jointY[i][s] is the y coordinate of joint i of state s.
+	 * @param count
+	 *            the number of states.
+	 * @return a bitmask with bit (s % 64) of word s / 64 set if state s
+	 *         collides.
+	 */
+	public long[] colliding(double[][] jointX, double[][] jointY, int count) {
+		long[] mask = new long[(count + BLOCK - 1) / BLOCK];
+		for (int lo = 0; lo < count; lo += BLOCK) {
+			mask[lo / BLOCK] = collidingBlock(jointX, jointY, lo,
+					Math.min(count, lo + BLOCK));
+		}
+		return mask;
+	}
+
+	/** Returns the colliding states from lo to hi - 1, as bits from lo */
+	private long collidingBlock(double[][] jointX, double[][] jointY, int lo,
+			int hi) {
+		long all = hi - lo == BLOCK ? -1L : (1L << (hi - lo)) - 1;
+		long hit = 0;
+		for (int i = 0; i + 1 < jointX.length && hit != all; i++) {
+			double[] ax = jointX[i];
+			double[] ay = jointY[i];
+			double[] bx = jointX[i + 1];
+			double[] by = jointY[i + 1];
+			double minX = Double.POSITIVE_INFINITY;
+			double minY = Double.POSITIVE_INFINITY;
+			double maxX = Double.NEGATIVE_INFINITY;
+			double maxY = Double.NEGATIVE_INFINITY;
+			for (int s = lo; s < hi; s++) {
+				minX = Math.min(minX, Math.min(ax[s], bx[s]));
+				minY = Math.min(minY, Math.min(ay[s], by[s]));
+				maxX = Math.max(maxX, Math.max(ax[s], bx[s]));
+				maxY = Math.max(maxY, Math.max(ay[s], by[s]));
+			}
+			int n = index.candidates(minX, minY, maxX, maxY, found);
+			for (int k = 0; k < n; k++) {
+				Rectangle2D rect = index.rect(found[k]);
+				double rx0 = rect.getMinX();
+				double ry0 = rect.getMinY();
+				double rx1 = rect.getMaxX();
+				double ry1 = rect.getMaxY();
+				if (maxX < rx0 || minX > rx1 || maxY < ry0 || minY > ry1) {
+					continue;
+				}
+				for (int s = lo; s < hi; s++) {
+					near[s - lo] = !((ax[s] < rx0 & bx[s] < rx0)
+							| (ax[s] > rx1 & bx[s] > rx1)
+							| (ay[s] < ry0 & by[s] < ry0)
+							| (ay[s] > ry1 & by[s] > ry1));
+				}
+				for (int s = lo; s < hi; s++) {
+					long bit = 1L << (s - lo);
+					if (near[s - lo] && (hit & bit) == 0
+							&& rect.intersectsLine(ax[s], ay[s], bx[s], by[s])) {
+						hit |= bit;
+					}
+				}
+			}
+		}
+		return hit;
+	}
+}
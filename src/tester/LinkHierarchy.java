@@ -0,0 +1,49 @@
+package tester;
+
+import problem.ArmConfig;
+
+/**
+ * Bounding-volume hierarchy over the link chain of an arm, for the obstacle
+ * check. Joints a to b of the chain lie within max(m - a, b - m) *
+ * LINK_LENGTH of joint m, so the links between them are covered by a disc
+ * around joint m. Halving the chain recursively gives a hierarchy of discs:
+ * a disc that ObstacleIndex.isDiscClear certifies accepts its whole
+ * sub-chain at once, and only the sub-chains whose discs can't be
+ * certified are split further, down to single links tested exactly as in
+ * Tester. The results are therefore identical to testing each link.
+ */
+public class LinkHierarchy {
+	/** Relative slack on disc radii, covering rounding in the joints */
+	private static final double SLACK = 1e-9;
+
+	/**
+	 * Returns whether any link of the configuration intersects one of the
+	 * obstacles in the index.
+	 *
+	 * @param cfg
+	 *            the configuration to test.
+	 * @param index
+	 *            the obstacles.
+	 * @return whether the configuration collides with an obstacle.
+	 */
+	public static boolean hasCollision(ArmConfig cfg, ObstacleIndex index) {
+		int n = cfg.getJointCount();
+		return n > 0 && collides(cfg, index, 0, n);
+	}
+
+	/** Returns whether any of the links from joint a to joint b collides */
+	private static boolean collides(ArmConfig cfg, ObstacleIndex index, int a,
+			int b) {
+		if (b - a == 1) {
+			return index.intersects(cfg.jointX(a), cfg.jointY(a),
+					cfg.jointX(b), cfg.jointY(b));
+		}
+		int m = (a + b) >>> 1;
+		double radius = Math.max(m - a, b - m) * ArmConfig.LINK_LENGTH
+				* (1 + SLACK);
+		if (index.isDiscClear(cfg.jointX(m), cfg.jointY(m), radius)) {
+			return false;
+		}
+		return collides(cfg, index, a, m) || collides(cfg, index, m, b);
+	}
+}
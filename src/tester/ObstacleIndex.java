@@ -0,0 +1,397 @@
+package tester;
+
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import problem.Obstacle;
+
+/**
+ * Immutable spatial index of the obstacles of a problem, for testing links
+ * against only the obstacles near them. The obstacle rectangles are shrunk
+ * by maxError once, when the index is built, and the workspace Tester.BOUNDS
+ * is divided into a uniform grid of square cells; each cell lists the
+ * obstacles that overlap it. A link is tested against the obstacles listed
+ * in the cells its bounding box covers, each exactly once.
+ *
+ * Points outside the workspace are clamped to the nearest cell, for
+ * obstacles and links alike, so obstacles that stick out of the workspace
+ * are still found. The intersection test itself is
+ * Rectangle2D.intersectsLine on the shrunk rectangle, as in
+ * Tester.hasCollision, so the results are identical.
+ *
+ * The index also records, for a finer fixed grid of clearance cells, the
+ * least distance from each cell to any obstacle, so that whole regions can
+ * be certified clear in constant time with isDiscClear.
+ */
+public class ObstacleIndex {
+	/** Largest number of cells along each side of the grid */
+	private static final int MAX_CELLS = 64;
+	/** Number of clearance cells along each side of the workspace */
+	private static final int CLEARANCE_CELLS = 64;
+
+	/** Obstacle rectangles shrunk by maxError */
+	private Rectangle2D[] rects;
+	/** Column and row of the cell holding each obstacle's lower-left corner */
+	private int[] firstColumn;
+	private int[] firstRow;
+	/** Number of cells along each side */
+	private int cells;
+	/** Obstacles of cell c are ids[cellStart[c]] to ids[cellStart[c + 1] - 1] */
+	private int[] cellStart;
+	private int[] ids;
+	/** Least distance from each clearance cell to any obstacle, by row */
+	private double[] cellClearance;
+	/** Fraction of the clearance cells farther than a link from obstacles */
+	private double openFraction;
+
+	/**
+	 * Builds an index of the given obstacles.
+	 *
+	 * @param obstacles
+	 *            the obstacles.
+	 * @param maxError
+	 *            the maximum allowable error, as in Tester.
+	 */
+	public ObstacleIndex(List<Obstacle> obstacles, double maxError) {
+		// Obstacles shrunk to nothing can never be hit, so are left out.
+		List<Rectangle2D> kept = new ArrayList<Rectangle2D>();
+		for (Obstacle o : obstacles) {
+			Rectangle2D rect = Tester.grow(o.getRect(), -maxError);
+			if (!rect.isEmpty()) {
+				kept.add(rect);
+			}
+		}
+		int n = kept.size();
+		rects = kept.toArray(new Rectangle2D[n]);
+		cells = Math.max(1, Math.min(MAX_CELLS, (int) Math.ceil(Math.sqrt(n))));
+		firstColumn = new int[n];
+		firstRow = new int[n];
+
+		int[] counts = new int[cells * cells + 1];
+		for (int pass = 0; pass < 2; pass++) {
+			for (int o = 0; o < n; o++) {
+				Rectangle2D rect = rects[o];
+				int c0 = column(rect.getMinX());
+				int c1 = column(rect.getMaxX());
+				int r0 = row(rect.getMinY());
+				int r1 = row(rect.getMaxY());
+				firstColumn[o] = c0;
+				firstRow[o] = r0;
+				for (int r = r0; r <= r1; r++) {
+					for (int c = c0; c <= c1; c++) {
+						if (pass == 0) {
+							counts[r * cells + c + 1]++;
+						} else {
+							ids[counts[r * cells + c]++] = o;
+						}
+					}
+				}
+			}
+			if (pass == 0) {
+				for (int c = 0; c < cells * cells; c++) {
+					counts[c + 1] += counts[c];
+				}
+				cellStart = counts.clone();
+				ids = new int[counts[cells * cells]];
+			}
+		}
+		computeClearances();
+	}
+
+	/**
+	 * Returns the number of obstacles in the index, not counting any that
+	 * were shrunk to nothing.
+	 *
+	 * @return the number of obstacles.
+	 */
+	public int getObstacleCount() {
+		return rects.length;
+	}
+
+	/**
+	 * Returns the fraction of the workspace that isDiscClear certifies clear
+	 * for discs of radius LINK_LENGTH, roughly; this is how much room there
+	 * is for whole stretches of an arm to be accepted at once.
+	 *
+	 * @return the open fraction of the workspace, from 0 to 1.
+	 */
+	public double getOpenFraction() {
+		return openFraction;
+	}
+
+	/**
+	 * Returns whether the segment from (x0, y0) to (x1, y1) intersects any
+	 * of the shrunk obstacles.
+	 *
+	 * @param x0
+	 *            the x coordinate of one end.
+	 * @param y0
+	 *            the y coordinate of one end.
+	 * @param x1
+	 *            the x coordinate of the other end.
+	 * @param y1
+	 *            the y coordinate of the other end.
+	 * @return whether the segment intersects an obstacle.
+	 */
+	public boolean intersects(double x0, double y0, double x1, double y1) {
+		int c0 = column(Math.min(x0, x1));
+		int c1 = column(Math.max(x0, x1));
+		int r0 = row(Math.min(y0, y1));
+		int r1 = row(Math.max(y0, y1));
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				int cell = r * cells + c;
+				for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+					int o = ids[k];
+					// Test each obstacle only in the first cell it shares with
+					// the segment's bounding box.
+					if (c != Math.max(c0, firstColumn[o])
+							|| r != Math.max(r0, firstRow[o])) {
+						continue;
+					}
+					if (rects[o].intersectsLine(x0, y0, x1, y1)) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Lists, each once, the shrunk obstacles in the cells that the given box
+	 * covers; every obstacle that a segment within the box intersects is
+	 * among them.
+	 *
+	 * @param minX
+	 *            the least x coordinate of the box.
+	 * @param minY
+	 *            the least y coordinate of the box.
+	 * @param maxX
+	 *            the greatest x coordinate of the box.
+	 * @param maxY
+	 *            the greatest y coordinate of the box.
+	 * @param found
+	 *            receives the obstacle ids; it must hold getObstacleCount()
+	 *            of them.
+	 * @return the number of ids written to found.
+	 */
+	int candidates(double minX, double minY, double maxX, double maxY,
+			int[] found) {
+		int c0 = column(minX);
+		int c1 = column(maxX);
+		int r0 = row(minY);
+		int r1 = row(maxY);
+		int count = 0;
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				int cell = r * cells + c;
+				for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+					int o = ids[k];
+					if (c == Math.max(c0, firstColumn[o])
+							&& r == Math.max(r0, firstRow[o])) {
+						found[count++] = o;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns an obstacle rectangle, shrunk by maxError.
+	 *
+	 * @param o
+	 *            the obstacle id, from 0 to getObstacleCount() - 1.
+	 * @return the shrunk rectangle, which must not be modified.
+	 */
+	Rectangle2D rect(int o) {
+		return rects[o];
+	}
+
+	/**
+	 * Returns whether the disc of the given centre and radius is certainly
+	 * clear of every shrunk obstacle, i.e. every obstacle is farther than
+	 * radius from the centre. This takes constant time, using the least
+	 * distance from the clearance cell holding the centre to any obstacle,
+	 * so it may return false for discs that are in fact clear, and always
+	 * does for centres outside the workspace.
+	 *
+	 * @param x
+	 *            the x coordinate of the centre.
+	 * @param y
+	 *            the y coordinate of the centre.
+	 * @param radius
+	 *            the radius.
+	 * @return whether the disc is certainly clear.
+	 */
+	public boolean isDiscClear(double x, double y, double radius) {
+		if (!(x >= Tester.BOUNDS.getMinX() && x <= Tester.BOUNDS.getMaxX()
+				&& y >= Tester.BOUNDS.getMinY() && y <= Tester.BOUNDS.getMaxY())) {
+			return false;
+		}
+		int c = clearanceCell((x - Tester.BOUNDS.getMinX())
+				/ Tester.BOUNDS.getWidth());
+		int r = clearanceCell((y - Tester.BOUNDS.getMinY())
+				/ Tester.BOUNDS.getHeight());
+		return cellClearance[r * CLEARANCE_CELLS + c] > radius;
+	}
+
+	/**
+	 * Computes the least distance from each clearance cell to any shrunk
+	 * obstacle. Obstacles are looked for in rings of index cells around the
+	 * one holding the clearance cell's centre, stopping once the next ring
+	 * is farther away than the nearest obstacle found; an obstacle clamped
+	 * into an edge cell lies beyond it, so is no nearer than the cell. A
+	 * clearance cell is no larger than an index cell, so it lies within ring
+	 * 1, and ring k is at least k - 2 index cells away from it.
+	 */
+	private void computeClearances() {
+		cellClearance = new double[CLEARANCE_CELLS * CLEARANCE_CELLS];
+		double width = Tester.BOUNDS.getWidth() / CLEARANCE_CELLS;
+		double height = Tester.BOUNDS.getHeight() / CLEARANCE_CELLS;
+		double ringGap = Math.min(Tester.BOUNDS.getWidth(),
+				Tester.BOUNDS.getHeight()) / cells;
+		for (int r = 0; r < CLEARANCE_CELLS; r++) {
+			for (int c = 0; c < CLEARANCE_CELLS; c++) {
+				double minX = Tester.BOUNDS.getMinX() + c * width;
+				double minY = Tester.BOUNDS.getMinY() + r * height;
+				double maxX = minX + width;
+				double maxY = minY + height;
+				int column = column((minX + maxX) / 2);
+				int row = row((minY + maxY) / 2);
+				double clearance = Double.POSITIVE_INFINITY;
+				for (int k = 0; k < cells; k++) {
+					if (k > 1 && (k - 2) * ringGap >= clearance) {
+						break;
+					}
+					for (int rr = Math.max(0, row - k); rr <= Math.min(cells - 1,
+							row + k); rr++) {
+						boolean edgeRow = rr == row - k || rr == row + k;
+						for (int cc = Math.max(0, column - k); cc <= Math.min(
+								cells - 1, column + k); cc++) {
+							if (!edgeRow && cc != column - k && cc != column + k) {
+								continue;
+							}
+							int cell = rr * cells + cc;
+							for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+								Rectangle2D rect = rects[ids[i]];
+								double dx = Math.max(Math.max(rect.getMinX() - maxX,
+										minX - rect.getMaxX()), 0);
+								double dy = Math.max(Math.max(rect.getMinY() - maxY,
+										minY - rect.getMaxY()), 0);
+								clearance = Math.min(clearance,
+										Math.sqrt(dx * dx + dy * dy));
+							}
+						}
+					}
+				}
+				cellClearance[r * CLEARANCE_CELLS + c] = clearance;
+				if (clearance > Tester.LINK_LENGTH) {
+					openFraction++;
+				}
+			}
+		}
+		openFraction /= CLEARANCE_CELLS * CLEARANCE_CELLS;
+	}
+
+	/**
+	 * Returns the distance from the segment from (x0, y0) to (x1, y1) to the
+	 * nearest of the shrunk obstacles, or -1 if the segment intersects one as
+	 * intersects() would report. Only obstacles near the segment are
+	 * examined, so distances of limit or more are reported as limit.
+	 *
+	 * @param x0
+	 *            the x coordinate of one end.
+	 * @param y0
+	 *            the y coordinate of one end.
+	 * @param x1
+	 *            the x coordinate of the other end.
+	 * @param y1
+	 *            the y coordinate of the other end.
+	 * @param limit
+	 *            the largest distance of interest.
+	 * @return the clearance of the segment, at most limit, or -1.
+	 */
+	public double clearance(double x0, double y0, double x1, double y1,
+			double limit) {
+		// An obstacle within limit of the segment overlaps the segment's
+		// bounding box grown by limit, so it is listed in one of its cells.
+		int c0 = column(Math.min(x0, x1) - limit);
+		int c1 = column(Math.max(x0, x1) + limit);
+		int r0 = row(Math.min(y0, y1) - limit);
+		int r1 = row(Math.max(y0, y1) + limit);
+		double clearance = limit;
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				int cell = r * cells + c;
+				for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+					int o = ids[k];
+					if (c != Math.max(c0, firstColumn[o])
+							|| r != Math.max(r0, firstRow[o])) {
+						continue;
+					}
+					Rectangle2D rect = rects[o];
+					if (rect.intersectsLine(x0, y0, x1, y1)) {
+						return -1;
+					}
+					clearance = Math.min(clearance,
+							distance(rect, x0, y0, x1, y1));
+				}
+			}
+		}
+		return clearance;
+	}
+
+	/**
+	 * Returns the distance between a rectangle and a segment that doesn't
+	 * intersect it. The nearest points of two disjoint convex polygons
+	 * include a vertex of one of them, so this is the least of the distances
+	 * from the rectangle's corners to the segment and from the segment's
+	 * ends to the rectangle.
+	 */
+	private static double distance(Rectangle2D rect, double x0, double y0,
+			double x1, double y1) {
+		double minX = rect.getMinX();
+		double minY = rect.getMinY();
+		double maxX = rect.getMaxX();
+		double maxY = rect.getMaxY();
+		double d = Math.min(
+				Math.min(Line2D.ptSegDist(x0, y0, x1, y1, minX, minY),
+						Line2D.ptSegDist(x0, y0, x1, y1, minX, maxY)),
+				Math.min(Line2D.ptSegDist(x0, y0, x1, y1, maxX, minY),
+						Line2D.ptSegDist(x0, y0, x1, y1, maxX, maxY)));
+		d = Math.min(d, pointDistance(minX, minY, maxX, maxY, x0, y0));
+		return Math.min(d, pointDistance(minX, minY, maxX, maxY, x1, y1));
+	}
+
+	/** Returns the distance from a point to an axis-aligned rectangle */
+	private static double pointDistance(double minX, double minY,
+			double maxX, double maxY, double x, double y) {
+		double dx = Math.max(Math.max(minX - x, x - maxX), 0);
+		double dy = Math.max(Math.max(minY - y, y - maxY), 0);
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/** Returns the grid column of an x coordinate, clamped to the grid */
+	private int column(double x) {
+		return cell((x - Tester.BOUNDS.getMinX()) / Tester.BOUNDS.getWidth());
+	}
+
+	/** Returns the grid row of a y coordinate, clamped to the grid */
+	private int row(double y) {
+		return cell((y - Tester.BOUNDS.getMinY()) / Tester.BOUNDS.getHeight());
+	}
+
+	private int cell(double fraction) {
+		int i = (int) Math.floor(fraction * cells);
+		return Math.max(0, Math.min(cells - 1, i));
+	}
+
+	private static int clearanceCell(double fraction) {
+		int i = (int) Math.floor(fraction * CLEARANCE_CELLS);
+		return Math.max(0, Math.min(CLEARANCE_CELLS - 1, i));
+	}
+}
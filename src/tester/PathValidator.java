@@ -0,0 +1,309 @@
+package tester;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import problem.ArmConfig;
+import problem.Obstacle;
+
+/**
+ * Runs every check of Tester over a path in a single pass. States are added
+ * one at a time, and each is checked against the previous state (for the
+ * step size) and on its own (for everything else) as it arrives, so only the
+ * previous state is kept. The indices of failing states are recorded for
+ * the reports. The exception is the obstacle check: the joint coordinates of
+ * the states are buffered and checked a few blocks at a time by a
+ * CollisionKernel, unless clearance skipping is on.
+ *
+ * A long path can also be split into chunks, each checked by its own
+ * validator from chunk(), possibly on another thread, and the results
+ * appended back together in path order.
+ */
+public class PathValidator {
+	/** Largest clearance computed; farther obstacles are not looked for */
+	private static final double CLEARANCE_LIMIT = 0.05;
+	/** Subtracted from each clearance to cover rounding in the checks */
+	private static final double CLEARANCE_MARGIN = 1e-9;
+	/** Number of states buffered for the collision kernel */
+	private static final int BUFFER_SIZE = 4 * CollisionKernel.BLOCK;
+
+	/** The tester whose checks and error tolerance are used */
+	private Tester tester;
+	private ArmConfig initialState;
+	private ArmConfig goalState;
+	/** The obstacles, indexed once for all states */
+	private ObstacleIndex obstacles;
+
+	/** The path index of the first state added */
+	private int start;
+	/** The number of states added */
+	private int stateCount;
+	/** The previous state added, or null */
+	private ArmConfig previous;
+	private boolean initialFirst;
+	/** The last state certified clear of obstacles, or null */
+	private ArmConfig certified;
+	/** How far the joints may move from the certified state and stay clear */
+	private double certifiedClearance;
+	/** The number of states passed by the certificate without a check */
+	private int skipped;
+	/** Checks the buffered states for obstacle collisions, or null */
+	private CollisionKernel kernel;
+	/** Joint coordinates of the buffered states, by joint, then by state */
+	private double[][] bufferX;
+	private double[][] bufferY;
+	/** The path index of the first buffered state */
+	private int bufferStart;
+	/** The number of states buffered */
+	private int buffered;
+
+	private List<Integer> badSteps = new ArrayList<Integer>();
+	private List<Integer> badAngles = new ArrayList<Integer>();
+	private List<Integer> selfColliding = new ArrayList<Integer>();
+	private List<Integer> outOfBounds = new ArrayList<Integer>();
+	private List<Integer> colliding = new ArrayList<Integer>();
+
+	/**
+	 * Constructs a validator for paths of the given problem.
+	 *
+	 * @param tester
+	 *            the tester whose checks are run.
+	 * @param initialState
+	 *            the initial configuration the path must start at.
+	 * @param goalState
+	 *            the goal configuration the path must end at.
+	 * @param obstacles
+	 *            the obstacles of the problem.
+	 */
+	public PathValidator(Tester tester, ArmConfig initialState,
+			ArmConfig goalState, List<Obstacle> obstacles) {
+		this(tester, initialState, goalState, tester.indexObstacles(obstacles));
+	}
+
+	private PathValidator(Tester tester, ArmConfig initialState,
+			ArmConfig goalState, ObstacleIndex obstacles) {
+		this.tester = tester;
+		this.initialState = initialState;
+		this.goalState = goalState;
+		this.obstacles = obstacles;
+	}
+
+	/**
+	 * Returns a validator for the chunk of the path starting at the given
+	 * index. The last state before the chunk is needed to check the step
+	 * into its first state.
+	 *
+	 * @param start
+	 *            the path index of the first state of the chunk.
+	 * @param previous
+	 *            the state before the chunk, or null if start is 0.
+	 * @return a new validator for the chunk.
+	 */
+	public PathValidator chunk(int start, ArmConfig previous) {
+		PathValidator chunk = new PathValidator(tester, initialState,
+				goalState, obstacles);
+		chunk.start = start;
+		chunk.previous = previous;
+		return chunk;
+	}
+
+	/**
+	 * Appends the results of a chunk that directly follows the states
+	 * checked so far.
+	 *
+	 * @param chunk
+	 *            a validator returned by chunk(getStateCount(), ...).
+	 */
+	public void append(PathValidator chunk) {
+		flush();
+		chunk.flush();
+		if (chunk.start == 0) {
+			initialFirst = chunk.initialFirst;
+		}
+		if (chunk.stateCount > 0) {
+			previous = chunk.previous;
+		}
+		stateCount += chunk.stateCount;
+		skipped += chunk.skipped;
+		badSteps.addAll(chunk.badSteps);
+		badAngles.addAll(chunk.badAngles);
+		selfColliding.addAll(chunk.selfColliding);
+		outOfBounds.addAll(chunk.outOfBounds);
+		colliding.addAll(chunk.colliding);
+	}
+
+	/**
+	 * Checks the next state of the path.
+	 *
+	 * @param cfg
+	 *            the state.
+	 */
+	public void add(ArmConfig cfg) {
+		int i = start + stateCount++;
+		if (previous == null) {
+			initialFirst = tester.isWithinError(cfg, initialState);
+		} else if (!tester.isValidStep(previous, cfg)) {
+			badSteps.add(i - 1);
+		}
+		if (!tester.hasValidJointAngles(cfg)) {
+			badAngles.add(i);
+		}
+		if (tester.hasSelfCollision(cfg)) {
+			selfColliding.add(i);
+		}
+		if (!tester.fitsBounds(cfg)) {
+			outOfBounds.add(i);
+		}
+		if (tester.isClearanceSkipping()) {
+			checkClearance(cfg, i);
+		} else {
+			buffer(cfg, i);
+		}
+		previous = cfg;
+	}
+
+	/** Buffers the joint coordinates of state i for the collision kernel */
+	private void buffer(ArmConfig cfg, int i) {
+		int jointCount = cfg.getJointCount();
+		if (buffered == BUFFER_SIZE
+				|| (bufferX != null && bufferX.length != jointCount + 1)) {
+			flush();
+		}
+		if (bufferX == null || bufferX.length != jointCount + 1) {
+			bufferX = new double[jointCount + 1][BUFFER_SIZE];
+			bufferY = new double[jointCount + 1][BUFFER_SIZE];
+		}
+		if (buffered == 0) {
+			bufferStart = i;
+		}
+		for (int j = 0; j <= jointCount; j++) {
+			bufferX[j][buffered] = cfg.jointX(j);
+			bufferY[j][buffered] = cfg.jointY(j);
+		}
+		buffered++;
+	}
+
+	/** Checks the buffered states and records the colliding ones */
+	private void flush() {
+		if (buffered == 0) {
+			return;
+		}
+		if (kernel == null) {
+			kernel = new CollisionKernel(obstacles);
+		}
+		long[] mask = kernel.colliding(bufferX, bufferY, buffered);
+		for (int s = 0; s < buffered; s++) {
+			if ((mask[s / CollisionKernel.BLOCK] & (1L << s)) != 0) {
+				colliding.add(bufferStart + s);
+			}
+		}
+		buffered = 0;
+	}
+
+	/**
+	 * Checks state i for obstacle collisions, unless it is close enough to
+	 * the last certified state to be clear, and certifies it if it is clear.
+	 */
+	private void checkClearance(ArmConfig cfg, int i) {
+		if (certified != null) {
+			double moved = cfg.maxDistance(certified);
+			if (moved >= 0 && moved < certifiedClearance) {
+				skipped++;
+				return;
+			}
+		}
+		double clearance = tester.clearance(cfg, obstacles, CLEARANCE_LIMIT);
+		if (clearance < 0) {
+			colliding.add(i);
+		}
+		if (clearance > CLEARANCE_MARGIN) {
+			certified = cfg;
+			certifiedClearance = clearance - CLEARANCE_MARGIN;
+		} else {
+			certified = null;
+		}
+	}
+
+	/**
+	 * Returns the number of states added.
+	 *
+	 * @return the number of states added.
+	 */
+	public int getStateCount() {
+		return stateCount;
+	}
+
+	/**
+	 * Returns the number of states whose obstacle check was skipped because
+	 * they were certified clear.
+	 *
+	 * @return the number of skipped states.
+	 */
+	public int getSkippedCount() {
+		return skipped;
+	}
+
+	/**
+	 * Returns whether the first state is the initial state.
+	 *
+	 * @return whether the first state is the initial state.
+	 */
+	public boolean hasInitialFirst() {
+		return initialFirst;
+	}
+
+	/**
+	 * Returns whether the last state added is the goal state.
+	 *
+	 * @return whether the last state added is the goal state.
+	 */
+	public boolean hasGoalLast() {
+		return previous != null && tester.isWithinError(previous, goalState);
+	}
+
+	/**
+	 * Returns the preceding path indices of any invalid steps.
+	 *
+	 * @return the preceding path indices of any invalid steps.
+	 */
+	public List<Integer> getInvalidSteps() {
+		return badSteps;
+	}
+
+	/**
+	 * Returns the path indices of any states with invalid joint angles.
+	 *
+	 * @return the path indices of any states with invalid joint angles.
+	 */
+	public List<Integer> getInvalidJointAngleStates() {
+		return badAngles;
+	}
+
+	/**
+	 * Returns the path indices of any states with self collision.
+	 *
+	 * @return the path indices of any states with self collision.
+	 */
+	public List<Integer> getSelfCollidingStates() {
+		return selfColliding;
+	}
+
+	/**
+	 * Returns the path indices of any states that are out of bounds.
+	 *
+	 * @return the path indices of any states that are out of bounds.
+	 */
+	public List<Integer> getOutOfBoundsStates() {
+		return outOfBounds;
+	}
+
+	/**
+	 * Returns the path indices of any states that collide with obstacles.
+	 *
+	 * @return the path indices of any states that collide with obstacles.
+	 */
+	public List<Integer> getCollidingStates() {
+		flush();
+		return colliding;
+	}
+}
@@ -0,0 +1,124 @@
+package tester;
+
+import java.awt.geom.Line2D;
+
+import problem.ArmConfig;
+
+/**
+ * Sweep-and-prune self collision test for arms with many joints. Links only
+ * a few apart in the chain are tested first, since that is where a curled
+ * arm usually hits itself. Then the links are sorted by the lower end of
+ * their extent along the axis the arm spreads furthest on, and swept in
+ * that order; only pairs of links whose extents overlap become
+ * candidates. A candidate pair is rejected cheaply if the y extents don't
+ * overlap, or if the link midpoints are more than LINK_LENGTH apart (every
+ * point of a link is within LINK_LENGTH / 2 of its midpoint, so two links
+ * that far apart cannot touch). The remaining pairs are tested with
+ * Line2D.linesIntersect in the same argument order as
+ * Tester.hasSelfCollision, so the results are identical.
+ */
+public class SelfCollision {
+	/** Pairs of links at most this far apart in the chain are tested first */
+	private static final int NEAR = 4;
+	/** Relative slack on the midpoint bound, covering rounding in link lengths */
+	private static final double SLACK = 1e-9;
+	/** Largest squared midpoint distance at which links may still touch */
+	private static final double MAX_MIDPOINT_DIST_SQ = ArmConfig.LINK_LENGTH
+			* ArmConfig.LINK_LENGTH * (1 + SLACK);
+
+	/**
+	 * Returns whether any two non-adjacent links of a configuration
+	 * intersect.
+	 *
+	 * @param cfg
+	 *            the arm configuration.
+	 * @return true if there is a collision.
+	 */
+	public static boolean hasSelfCollision(ArmConfig cfg) {
+		int n = cfg.getJointCount();
+		// A curled arm nearly always hits itself between links a few apart,
+		// so those pairs are tested first, directly.
+		for (int i = 2; i < n; i++) {
+			for (int j = Math.max(i - NEAR, 0); j < i - 1; j++) {
+				if (intersect(cfg, i, j)) {
+					return true;
+				}
+			}
+		}
+		// Sweep along the axis the arm spreads furthest on, which leaves the
+		// fewest overlapping extents.
+		double xMin = cfg.jointX(0);
+		double xMax = xMin;
+		double yMin = cfg.jointY(0);
+		double yMax = yMin;
+		for (int i = 1; i <= n; i++) {
+			xMin = Math.min(xMin, cfg.jointX(i));
+			xMax = Math.max(xMax, cfg.jointX(i));
+			yMin = Math.min(yMin, cfg.jointY(i));
+			yMax = Math.max(yMax, cfg.jointY(i));
+		}
+		boolean alongX = xMax - xMin >= yMax - yMin;
+
+		double[] lo = new double[n];
+		double[] hi = new double[n];
+		int[] order = new int[n];
+		double c0 = alongX ? cfg.jointX(0) : cfg.jointY(0);
+		for (int i = 0; i < n; i++) {
+			double c1 = alongX ? cfg.jointX(i + 1) : cfg.jointY(i + 1);
+			lo[i] = Math.min(c0, c1);
+			hi[i] = Math.max(c0, c1);
+			c0 = c1;
+			// Insertion sort by lo; consecutive links are nearly sorted
+			// along straight stretches of the arm.
+			int k = i;
+			while (k > 0 && lo[order[k - 1]] > lo[i]) {
+				order[k] = order[k - 1];
+				k--;
+			}
+			order[k] = i;
+		}
+
+		int[] active = new int[n];
+		int activeCount = 0;
+		for (int k = 0; k < n; k++) {
+			int i = order[k];
+			int kept = 0;
+			for (int a = 0; a < activeCount; a++) {
+				int j = active[a];
+				if (hi[j] < lo[i]) {
+					continue;
+				}
+				active[kept++] = j;
+				if ((j > i ? j - i : i - j) > NEAR
+						&& (j > i ? intersect(cfg, j, i) : intersect(cfg, i, j))) {
+					return true;
+				}
+			}
+			activeCount = kept;
+			active[activeCount++] = i;
+		}
+		return false;
+	}
+
+	/** Tests links i and j, where j < i - 1, after the cheap rejections */
+	private static boolean intersect(ArmConfig cfg, int i, int j) {
+		double ax0 = cfg.jointX(i);
+		double ay0 = cfg.jointY(i);
+		double ax1 = cfg.jointX(i + 1);
+		double ay1 = cfg.jointY(i + 1);
+		double bx0 = cfg.jointX(j);
+		double by0 = cfg.jointY(j);
+		double bx1 = cfg.jointX(j + 1);
+		double by1 = cfg.jointY(j + 1);
+		if (Math.max(ay0, ay1) < Math.min(by0, by1)
+				|| Math.max(by0, by1) < Math.min(ay0, ay1)) {
+			return false;
+		}
+		double dx = (ax0 + ax1 - bx0 - bx1) / 2;
+		double dy = (ay0 + ay1 - by0 - by1) / 2;
+		if (dx * dx + dy * dy > MAX_MIDPOINT_DIST_SQ) {
+			return false;
+		}
+		return Line2D.linesIntersect(ax0, ay0, ax1, ay1, bx0, by0, bx1, by1);
+	}
+}
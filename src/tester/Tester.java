@@ -1,15 +1,22 @@
 package tester;
 
 import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import problem.ArmConfig;
 import problem.Obstacle;
 import problem.ProblemSpec;
+import problem.SolutionReader;
 
 public class Tester {
 	/** The maximum distance the base can move in one step */
@@ -26,6 +33,14 @@ public class Tester {
 	public static final Rectangle2D BOUNDS = new Rectangle2D.Double(0, 0, 1, 1);
 	/** The default value for maximum error */
 	public static final double DEFAULT_MAX_ERROR = 1e-5;
+	/** Smallest joint count checked for self collision by sweep and prune */
+	private static final int SWEEP_MIN_JOINTS = 20;
+	/** Smallest joint count checked for obstacle collision by LinkHierarchy */
+	private static final int HIERARCHY_MIN_JOINTS = 4;
+	/** Least open fraction of the workspace at which LinkHierarchy is used */
+	private static final double HIERARCHY_MIN_OPEN = 0.25;
+	/** Number of states per chunk in parallel validation */
+	private static final int CHUNK_SIZE = 4096;
 	
 	/** Remembers the specifications of the problem. */
 	private ProblemSpec ps = new ProblemSpec();
@@ -33,6 +48,10 @@ public class Tester {
 	private double maxError;
 	/** The workspace bounds, with allowable error. */
 	private Rectangle2D lenientBounds;
+	/** The results of every check on the solution path, or null */
+	private PathValidator validation;
+	/** Whether obstacle checks are skipped for states certified clear */
+	private boolean clearanceSkipping;
 	
 	/**
 	 * Creates a new Rectangle2D that is grown by delta in each direction
@@ -89,7 +108,21 @@ public class Tester {
 	 * @return whether the first cfg is the initial cfg.
 	 */
 	public boolean hasInitialFirst() {
-		double dist = ps.getPath().get(0).maxDistance(ps.getInitialState());
+		return validation().hasInitialFirst();
+	}
+
+	/**
+	 * Returns whether a configuration matches a target configuration within
+	 * the maximum error.
+	 *
+	 * @param cfg
+	 *            the configuration to test.
+	 * @param target
+	 *            the configuration it should match.
+	 * @return whether every joint of cfg is within maxError of the target.
+	 */
+	public boolean isWithinError(ArmConfig cfg, ArmConfig target) {
+		double dist = cfg.maxDistance(target);
 		return dist <= maxError && dist >= 0;
 	}
 
@@ -114,9 +147,7 @@ public class Tester {
 	 * @return whether the last cfg is the goal cfg.
 	 */
 	public boolean hasGoalLast() {
-		List<ArmConfig> path = ps.getPath();
-		double dist = path.get(path.size() - 1).maxDistance(ps.getGoalState());
-		return dist <= maxError && dist >= 0;
+		return validation().hasGoalLast();
 	}
 	
 	/**
@@ -144,7 +175,7 @@ public class Tester {
 		if (!badSteps.isEmpty()) {
 			System.out.println(String.format(
 					"FAILED: Step size limit exceeded for %d of %d step(s).",
-					badSteps.size(), ps.getPath().size() - 1));
+					badSteps.size(), validation().getStateCount() - 1));
 			if (verbose) {
 				System.out.println("Starting line for each invalid step:");
 				System.out.println(addToAll(badSteps, 2));
@@ -162,17 +193,7 @@ public class Tester {
 	 * @return the preceding path indices of any invalid steps.
 	 */
 	public List<Integer> getInvalidSteps() {
-		List<Integer> badSteps = new ArrayList<Integer>();
-		List<ArmConfig> path = ps.getPath();
-		ArmConfig state = path.get(0);
-		for (int i = 1; i < path.size(); i++) {
-			ArmConfig nextState = path.get(i);
-			if (!isValidStep(state, nextState)) {
-				badSteps.add(i - 1);
-			}
-			state = nextState;
-		}
-		return badSteps;
+		return validation().getInvalidSteps();
 	}
 	
 	/**
@@ -189,7 +210,8 @@ public class Tester {
 			return false;
 		} else if (cfg0.maxAngleDiff(cfg1) > MAX_JOINT_STEP + maxError) {
 			return false;
-		} else if (cfg0.getBase().distance(cfg1.getBase()) > MAX_BASE_STEP + maxError) {
+		} else if (Point2D.distance(cfg0.baseX(), cfg0.baseY(), cfg1.baseX(),
+				cfg1.baseY()) > MAX_BASE_STEP + maxError) {
 			return false;
 		}
 		return true;
@@ -204,7 +226,7 @@ public class Tester {
 		if (!badStates.isEmpty()) {
 			System.out.println(String.format(
 					"FAILED: Invalid joint angle for %d of %d state(s).",
-					badStates.size(), ps.getPath().size()));
+					badStates.size(), validation().getStateCount()));
 			if (verbose) {
 				if (verbose) {
 					System.out.println("Line for each invalid cfg:");
@@ -224,14 +246,7 @@ public class Tester {
 	 * @return the path indices of any states with invalid joint angles.
 	 */
 	public List<Integer> getInvalidJointAngleStates() {
-		List<Integer> badStates = new ArrayList<Integer>();
-		List<ArmConfig> path = ps.getPath();
-		for (int i = 0; i < path.size(); i++) {
-			if (!hasValidJointAngles(path.get(i))) {
-				badStates.add(i);
-			}
-		}
-		return badStates;
+		return validation().getInvalidJointAngleStates();
 	}
 	
 	/** 
@@ -242,8 +257,8 @@ public class Tester {
 	 * @return true if all joint angles are within the limits
 	 */
 	public boolean hasValidJointAngles(ArmConfig cfg) {
-		List<Double> jointAngles = cfg.getJointAngles();
-		for (Double angle : jointAngles) {
+		for (int i = 0; i < cfg.getJointCount(); i++) {
+			double angle = cfg.angle(i);
 			if (angle <= MIN_JOINT_ANGLE - maxError) {
 				return false;
 			} else if (angle >= MAX_JOINT_ANGLE + maxError) {
@@ -262,7 +277,7 @@ public class Tester {
 		if (!badStates.isEmpty()) {
 			System.out.println(String.format(
 					"FAILED: Self collision for %d of %d state(s).",
-					badStates.size(), ps.getPath().size()));
+					badStates.size(), validation().getStateCount()));
 			if (verbose) {
 				if (verbose) {
 					System.out.println("Line for each invalid cfg:");
@@ -282,14 +297,23 @@ public class Tester {
 	 * @return the path indices of any states with self collision.
 	 */
 	public List<Integer> getSelfCollidingStates() {
-		List<Integer> badStates = new ArrayList<Integer>();
-		List<ArmConfig> path = ps.getPath();
-		for (int i = 0; i < path.size(); i++) {
-			if (hasSelfCollision(path.get(i))) {
-				badStates.add(i);
-			}
+		return validation().getSelfCollidingStates();
+	}
+
+	/**
+	 * Checks if a configuration collides with itself. Arms with many joints
+	 * are checked with SelfCollision, which gives the same result as the
+	 * naive method but tests far fewer link pairs.
+	 * 
+	 * @param cfg
+	 * 			The arm configuration
+	 * @return true if there is a collision
+	 */
+	public boolean hasSelfCollision(ArmConfig cfg) {
+		if (cfg.getJointCount() >= SWEEP_MIN_JOINTS) {
+			return SelfCollision.hasSelfCollision(cfg);
 		}
-		return badStates;
+		return hasSelfCollisionNaive(cfg);
 	}
 
 	/**
@@ -300,11 +324,13 @@ public class Tester {
 	 * 			The arm configuration
 	 * @return true if there is a collision
 	 */
-	public boolean hasSelfCollision(ArmConfig cfg) {
-		List<Line2D> links = cfg.getLinks();
-		for (int i = 0; i < links.size(); i++) {
+	public boolean hasSelfCollisionNaive(ArmConfig cfg) {
+		int linkCount = cfg.getJointCount();
+		for (int i = 0; i < linkCount; i++) {
 			for (int j = 0; j < i - 1; j++) {
-				if (links.get(i).intersectsLine(links.get(j))) {
+				if (Line2D.linesIntersect(cfg.jointX(i), cfg.jointY(i),
+						cfg.jointX(i + 1), cfg.jointY(i + 1), cfg.jointX(j),
+						cfg.jointY(j), cfg.jointX(j + 1), cfg.jointY(j + 1))) {
 					return true;
 				}
 			}
@@ -321,7 +347,7 @@ public class Tester {
 		if (!badStates.isEmpty()) {
 			System.out.println(String.format("FAILED: %d of %d"
 					+ " state(s) go out of the workspace bounds.",
-					badStates.size(), ps.getPath().size()));
+					badStates.size(), validation().getStateCount()));
 			if (verbose) {
 				System.out.println("Line for each invalid cfg:");
 				System.out.println(addToAll(badStates, 2));
@@ -339,14 +365,7 @@ public class Tester {
 	 * @return the path indices of any states that are out of bounds.
 	 */
 	public List<Integer> getOutOfBoundsStates() {
-		List<ArmConfig> path = ps.getPath();
-		List<Integer> badStates = new ArrayList<Integer>();
-		for (int i = 0; i < path.size(); i++) {
-			if (!fitsBounds(path.get(i))) {
-				badStates.add(i);
-			}
-		}
-		return badStates;
+		return validation().getOutOfBoundsStates();
 	}
 	
 	/**
@@ -357,12 +376,8 @@ public class Tester {
 	 * @return whether the given configuration fits wholly within the bounds.
 	 */
 	public boolean fitsBounds(ArmConfig cfg) {
-		if (!lenientBounds.contains(cfg.getBase())) {
-			return false;
-		}
-		List<Line2D> links = cfg.getLinks();
-		for (Line2D link : links) {
-			if (!lenientBounds.contains(link.getP2())) {
+		for (int i = 0; i <= cfg.getJointCount(); i++) {
+			if (!lenientBounds.contains(cfg.jointX(i), cfg.jointY(i))) {
 				return false;
 			}
 		}
@@ -379,7 +394,7 @@ public class Tester {
 		if (!badStates.isEmpty()) {
 			System.out.println(String.format(
 					"FAILED: %d of %d state(s) collide with obstacles.",
-					badStates.size(), ps.getPath().size()));
+					badStates.size(), validation().getStateCount()));
 			if (verbose) {
 				System.out.println("Line for each invalid cfg:");
 				System.out.println(addToAll(badStates, 2));
@@ -397,14 +412,7 @@ public class Tester {
 	 * @return the path indices of any states that collide with obstacles.
 	 */
 	public List<Integer> getCollidingStates() {
-		List<ArmConfig> path = ps.getPath();
-		List<Integer> badStates = new ArrayList<Integer>();
-		for (int i = 0; i < path.size(); i++) {
-			if (hasCollision(path.get(i), ps.getObstacles())) {
-				badStates.add(i);
-			}
-		}
-		return badStates;
+		return validation().getCollidingStates();
 	}
 
 	/**
@@ -427,6 +435,116 @@ public class Tester {
 		return false;
 	}
 
+	/**
+	 * Returns whether the given config collides with any of the obstacles in
+	 * the given index. Gives the same result as hasCollision(ArmConfig, List)
+	 * for the indexed obstacles. Arms with several joints are checked with
+	 * LinkHierarchy, which accepts whole stretches of the arm far from the
+	 * obstacles at once, unless the obstacles are packed so densely that
+	 * hardly any stretch would be.
+	 *
+	 * @param cfg
+	 *            the configuration to test.
+	 * @param index
+	 *            the obstacles to test against, indexed with this tester's
+	 *            maximum error.
+	 * @return whether the given config collides with any of the obstacles.
+	 */
+	public boolean hasCollision(ArmConfig cfg, ObstacleIndex index) {
+		if (cfg.getJointCount() >= HIERARCHY_MIN_JOINTS
+				&& index.getOpenFraction() >= HIERARCHY_MIN_OPEN) {
+			return LinkHierarchy.hasCollision(cfg, index);
+		}
+		return hasCollisionPerLink(cfg, index);
+	}
+
+	/**
+	 * Returns whether the given config collides with any of the obstacles in
+	 * the given index, testing each link in turn.
+	 *
+	 * @param cfg
+	 *            the configuration to test.
+	 * @param index
+	 *            the obstacles to test against, indexed with this tester's
+	 *            maximum error.
+	 * @return whether the given config collides with any of the obstacles.
+	 */
+	public boolean hasCollisionPerLink(ArmConfig cfg, ObstacleIndex index) {
+		for (int i = 0; i < cfg.getJointCount(); i++) {
+			if (index.intersects(cfg.jointX(i), cfg.jointY(i),
+					cfg.jointX(i + 1), cfg.jointY(i + 1))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the least distance between any link of the given config and
+	 * any of the obstacles in the given index, or -1 if the config collides
+	 * with one of them as hasCollision would report. Distances of limit or
+	 * more are reported as limit.
+	 *
+	 * @param cfg
+	 *            the configuration to test.
+	 * @param index
+	 *            the obstacles to test against, indexed with this tester's
+	 *            maximum error.
+	 * @param limit
+	 *            the largest clearance of interest.
+	 * @return the clearance of the config, at most limit, or -1.
+	 */
+	public double clearance(ArmConfig cfg, ObstacleIndex index, double limit) {
+		double clearance = limit;
+		for (int i = 0; i < cfg.getJointCount(); i++) {
+			double d = index.clearance(cfg.jointX(i), cfg.jointY(i),
+					cfg.jointX(i + 1), cfg.jointY(i + 1), clearance);
+			if (d < 0) {
+				return -1;
+			}
+			clearance = Math.min(clearance, d);
+		}
+		return clearance;
+	}
+
+	/**
+	 * Sets whether validation may skip the obstacle check for states that are
+	 * certified clear. When a state is found to be at distance d from every
+	 * obstacle, no later state whose joints have all moved less than d from
+	 * it can touch an obstacle, since every point of a link moves no further
+	 * than one of its ends. Such states are passed without being checked,
+	 * until one moves too far and is checked (and certified) again. The
+	 * verdicts are the same as without skipping. Off by default.
+	 *
+	 * @param enabled
+	 *            whether to skip certified states.
+	 */
+	public void setClearanceSkipping(boolean enabled) {
+		clearanceSkipping = enabled;
+	}
+
+	/**
+	 * Returns whether validation skips the obstacle check for states that
+	 * are certified clear.
+	 *
+	 * @return whether clearance skipping is on.
+	 */
+	public boolean isClearanceSkipping() {
+		return clearanceSkipping;
+	}
+
+	/**
+	 * Builds an index of the given obstacles for hasCollision, with this
+	 * tester's maximum error.
+	 *
+	 * @param obstacles
+	 *            the obstacles to index.
+	 * @return the index.
+	 */
+	public ObstacleIndex indexObstacles(List<Obstacle> obstacles) {
+		return new ObstacleIndex(obstacles, maxError);
+	}
+
 	/**
 	 * Returns whether the given config collides with the given obstacle.
 	 *
@@ -438,15 +556,115 @@ public class Tester {
 	 */
 	public boolean hasCollision(ArmConfig cfg, Obstacle o) {
 		Rectangle2D lenientRect = grow(o.getRect(), -maxError);
-		List<Line2D> links = cfg.getLinks();
-		for (Line2D link : links) {
-			if (link.intersects(lenientRect)) {
+		for (int i = 0; i < cfg.getJointCount(); i++) {
+			if (lenientRect.intersectsLine(cfg.jointX(i), cfg.jointY(i),
+					cfg.jointX(i + 1), cfg.jointY(i + 1))) {
 				return true;
 			}
 		}
 		return false;
 	}
 	
+	/**
+	 * Checks every state of a solution file in one pass, reading the states
+	 * one at a time, and keeps the results for the tests. The problem must
+	 * be loaded.
+	 *
+	 * @param solutionPath
+	 *            the path of the solution file.
+	 * @throws IOException
+	 *             if the solution file doesn't exist or is malformed.
+	 */
+	public void validate(String solutionPath) throws IOException {
+		PathValidator validator = newValidator();
+		SolutionReader input = SolutionReader.open(solutionPath);
+		try {
+			while (input.hasNext()) {
+				validator.add(input.next());
+			}
+		} finally {
+			input.close();
+		}
+		validation = validator;
+	}
+
+	/**
+	 * Checks every state of a solution file as validate(String) does, but
+	 * splits the path into chunks that are checked in parallel. The file is
+	 * still read in order, and at most a few chunks per thread are held in
+	 * memory at a time. The results are the same as validate(String).
+	 *
+	 * @param solutionPath
+	 *            the path of the solution file.
+	 * @param threads
+	 *            the number of threads to check chunks on.
+	 * @throws IOException
+	 *             if the solution file doesn't exist or is malformed.
+	 */
+	public void validate(String solutionPath, int threads) throws IOException {
+		if (threads <= 1) {
+			validate(solutionPath);
+			return;
+		}
+		PathValidator validator = newValidator();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		Deque<ForkJoinTask<PathValidator>> pending =
+				new ArrayDeque<ForkJoinTask<PathValidator>>();
+		SolutionReader input = SolutionReader.open(solutionPath);
+		try {
+			ArmConfig previous = null;
+			int start = 0;
+			while (input.hasNext()) {
+				final List<ArmConfig> states = new ArrayList<ArmConfig>(CHUNK_SIZE);
+				while (states.size() < CHUNK_SIZE && input.hasNext()) {
+					states.add(input.next());
+				}
+				final PathValidator chunk = validator.chunk(start, previous);
+				pending.add(pool.submit(new Callable<PathValidator>() {
+					public PathValidator call() {
+						for (ArmConfig cfg : states) {
+							chunk.add(cfg);
+						}
+						return chunk;
+					}
+				}));
+				previous = states.get(states.size() - 1);
+				start += states.size();
+				// Merge finished chunks in order to bound memory use.
+				if (pending.size() >= 4 * threads) {
+					validator.append(pending.remove().join());
+				}
+			}
+			while (!pending.isEmpty()) {
+				validator.append(pending.remove().join());
+			}
+		} finally {
+			input.close();
+			pool.shutdownNow();
+		}
+		validation = validator;
+	}
+
+	/**
+	 * Returns the results of every check on the solution path, checking the
+	 * path loaded into the problem spec if validate hasn't been called.
+	 */
+	private PathValidator validation() {
+		if (validation == null) {
+			PathValidator validator = newValidator();
+			for (ArmConfig cfg : ps.getPath()) {
+				validator.add(cfg);
+			}
+			validation = validator;
+		}
+		return validation;
+	}
+
+	private PathValidator newValidator() {
+		return new PathValidator(this, ps.getInitialState(),
+				ps.getGoalState(), ps.getObstacles());
+	}
+
 	/**
 	 * Runs a specific test based on its name.
 	 */
@@ -480,6 +698,8 @@ public class Tester {
 	public static void main(String[] args) {
 		double maxError = DEFAULT_MAX_ERROR;
 		boolean verbose = false;
+		boolean skip = false;
+		int threads = 1;
 		String problemPath = null;
 		String solutionPath = null;
 		for (int i = 0; i < args.length; i++) {
@@ -491,6 +711,13 @@ public class Tester {
 				}
 			} else if (arg.equals("-v")) {
 				verbose = true;
+			} else if (arg.equals("-c")) {
+				skip = true;
+			} else if (arg.equals("-j")) {
+				i++;
+				if (i < args.length) {
+					threads = Integer.valueOf(args[i]);
+				}
 			} else {
 				if (problemPath == null) {
 					problemPath = arg;
@@ -500,12 +727,13 @@ public class Tester {
 			}
 		}
 		if (problemPath == null) {
-			System.out.println("Usage: tester [-e maxError] [-v] "
+			System.out.println("Usage: tester [-e maxError] [-v] [-j threads] [-c] "
 					+ "problem-file [solution-file]");
 			System.exit(1);
 		}
 		System.out.println("Test #0: Loading files");
 		Tester tester = new Tester(maxError);
+		tester.setClearanceSkipping(skip);
 		try {
 			tester.ps.loadProblem(problemPath);
 		} catch (IOException e1) {
@@ -516,7 +744,7 @@ public class Tester {
 
 		if (solutionPath != null) {
 			try {
-				tester.ps.loadSolution(solutionPath);
+				tester.validate(solutionPath, threads);
 			} catch (IOException e1) {
 				System.out.println("FAILED: Invalid solution file");
 				System.out.println(e1.getMessage());
@@ -0,0 +1,106 @@
+package algorithm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import problem.Obstacle;
+import problem.ProblemSpec;
+import tester.ObstacleIndex;
+import tester.Tester;
+
+/**
+ * Checks that the distance field's bounds never exceed the exact clearance,
+ * and that updated and cached fields are the same as freshly built ones.
+ */
+public class DistanceFieldTest {
+	@Test
+	public void lowerBoundNeverExceedsClearance() throws IOException {
+		ProblemSpec ps = new ProblemSpec();
+		ps.loadProblem("testcases/4_joints.txt");
+		checkLowerBound(ps.getObstacles());
+		checkLowerBound(randomObstacles(new Random(0), 100));
+	}
+
+	@Test
+	public void updateMatchesBuild() throws IOException {
+		Random random = new Random(1);
+		List<Obstacle> obstacles = randomObstacles(random, 40);
+		DistanceField field = DistanceField.build(obstacles, 64, 2);
+		for (int round = 0; round < 5; round++) {
+			List<Obstacle> removed = new ArrayList<Obstacle>();
+			removed.add(obstacles.remove(random.nextInt(obstacles.size())));
+			List<Obstacle> added = randomObstacles(random, 1 + round % 2);
+			obstacles.addAll(added);
+			field = field.update(obstacles, added, removed, 2);
+			assertArrayEquals(bytes(DistanceField.build(obstacles, 64, 2), obstacles),
+					bytes(field, obstacles));
+		}
+	}
+
+	@Test
+	public void cacheRoundTrips() throws IOException {
+		ProblemSpec ps = new ProblemSpec();
+		ps.loadProblem("testcases/4_joints.txt");
+		File file = File.createTempFile("distancefield", DistanceField.CACHE_SUFFIX);
+		file.deleteOnExit();
+		file.delete();
+		DistanceField built = DistanceField.forProblem(ps, file.getPath(), 64, 2);
+		DistanceField loaded = DistanceField.load(file.getPath(), ps.getObstacles(), 64);
+		assertNotNull(loaded);
+		assertArrayEquals(bytes(built, ps.getObstacles()),
+				bytes(loaded, ps.getObstacles()));
+		assertNull(DistanceField.load(file.getPath(), ps.getObstacles(), 32));
+		assertNull(DistanceField.load(file.getPath(),
+				randomObstacles(new Random(2), 3), 64));
+	}
+
+	private static void checkLowerBound(List<Obstacle> obstacles) {
+		DistanceField field = DistanceField.build(obstacles, 128, 2);
+		ObstacleIndex exact = new ObstacleIndex(obstacles, 0);
+		Random random = new Random(0);
+		for (int t = 0; t < 100000; t++) {
+			double x0 = random.nextDouble();
+			double y0 = random.nextDouble();
+			double angle = random.nextDouble() * 2 * Math.PI;
+			double x1 = x0 + Tester.LINK_LENGTH * Math.cos(angle);
+			double y1 = y0 + Tester.LINK_LENGTH * Math.sin(angle);
+			double clearance = exact.clearance(x0, y0, x1, y1,
+					DistanceField.MAX_DISTANCE);
+			double bound = field.lowerBound(x0, y0, x1, y1);
+			assertTrue(bound + " > " + clearance, bound <= Math.max(clearance, 0));
+		}
+	}
+
+	private static List<Obstacle> randomObstacles(Random random, int n) {
+		List<Obstacle> obstacles = new ArrayList<Obstacle>();
+		double size = 0.5 / Math.sqrt(n);
+		for (int i = 0; i < n; i++) {
+			obstacles.add(new Obstacle(random.nextDouble(), random.nextDouble(),
+					random.nextDouble() * size, random.nextDouble() * size));
+		}
+		return obstacles;
+	}
+
+	/** Returns the field as saved to a cache file */
+	private static byte[] bytes(DistanceField field, List<Obstacle> obstacles)
+			throws IOException {
+		File file = File.createTempFile("distancefield", DistanceField.CACHE_SUFFIX);
+		try {
+			field.save(file.getPath(), obstacles);
+			return Files.readAllBytes(file.toPath());
+		} finally {
+			file.delete();
+		}
+	}
+}
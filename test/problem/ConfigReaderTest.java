@@ -0,0 +1,89 @@
+package problem;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks ConfigReader's number parsing against Double.parseDouble, which
+ * java.util.Scanner and ProblemSpec used before it.
+ */
+public class ConfigReaderTest {
+	@Test
+	public void parseDoubleMatchesJava() {
+		Random random = new Random(0);
+		for (int t = 0; t < 200000; t++) {
+			String s = randomNumber(random);
+			byte[] b = s.getBytes(StandardCharsets.ISO_8859_1);
+			assertEquals(s, Double.doubleToLongBits(Double.parseDouble(s)),
+					Double.doubleToLongBits(ConfigReader.parseDouble(b, 0, b.length)));
+		}
+	}
+
+	@Test
+	public void readsSolutionFilesAsParsed() throws IOException {
+		Random random = new Random(1);
+		List<String[]> lines = new ArrayList<String[]>();
+		for (int i = 0; i < 1000; i++) {
+			String[] values = new String[2 + random.nextInt(6)];
+			for (int j = 0; j < values.length; j++) {
+				values[j] = randomNumber(random);
+			}
+			lines.add(values);
+		}
+		File file = File.createTempFile("configreader", ".txt");
+		file.deleteOnExit();
+		PrintWriter output = new PrintWriter(file, "ISO-8859-1");
+		try {
+			output.println(lines.size() - 1);
+			for (String[] values : lines) {
+				output.println(String.join(" ", values));
+			}
+		} finally {
+			output.close();
+		}
+
+		ConfigReader reader = new ConfigReader(file.getPath());
+		try {
+			reader.expectLine();
+			assertEquals(lines.size() - 1, reader.nextInt());
+			for (String[] values : lines) {
+				reader.expectLine();
+				double[] angles = new double[values.length - 2];
+				for (int j = 0; j < angles.length; j++) {
+					angles[j] = Double.parseDouble(values[j + 2]);
+				}
+				ArmConfig expected = new ArmConfig(Double.parseDouble(values[0]),
+						Double.parseDouble(values[1]), angles);
+				assertEquals(expected.toString(), reader.nextConfig().toString());
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/** Returns a number in one of the forms solution files use */
+	private static String randomNumber(Random random) {
+		switch (random.nextInt(5)) {
+		case 0:
+			return Double.toString(random.nextDouble());
+		case 1:
+			return Double.toString((random.nextDouble() - 0.5) * 6);
+		case 2:
+			return String.format(Locale.ROOT, "%.6f", (random.nextDouble() - 0.5) * 6);
+		case 3:
+			return Double.toString(random.nextGaussian() * 1e-7);
+		default:
+			return Integer.toString(random.nextInt(2001) - 1000);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package problem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import tester.Tester;
+
+/**
+ * Checks TrigTable against Math.cos and Math.sin, and table-driven forward
+ * kinematics against exact forward kinematics.
+ */
+public class TrigTableTest {
+	/** Largest error allowed in a table value */
+	private static final double MAX_TRIG_ERROR = 4 * Math.ulp(1.0);
+
+	@Test
+	public void tablesMatchMathForEveryGridAngle() {
+		for (int k = -TrigTable.STEPS_PER_TURN; k <= TrigTable.STEPS_PER_TURN; k++) {
+			double angle = k * TrigTable.STEP;
+			assertEquals(Math.cos(angle), TrigTable.cos(k), MAX_TRIG_ERROR);
+			assertEquals(Math.sin(angle), TrigTable.sin(k), MAX_TRIG_ERROR);
+		}
+	}
+
+	@Test
+	public void gridIndexFindsOnlyGridAngles() {
+		for (int k = -TrigTable.STEPS_PER_TURN; k <= TrigTable.STEPS_PER_TURN; k++) {
+			assertEquals(k, TrigTable.gridIndex(k * TrigTable.STEP));
+			assertEquals(TrigTable.OFF_GRID,
+					TrigTable.gridIndex((k + 0.5) * TrigTable.STEP));
+		}
+	}
+
+	@Test
+	public void tableKinematicsAreWithinTesterError() {
+		Random random = new Random(0);
+		int limit = (int) Math.round(Tester.MAX_JOINT_ANGLE / TrigTable.STEP);
+		double endpointError = 0;
+		for (int t = 0; t < 100000; t++) {
+			double[] angles = new double[1 + random.nextInt(10)];
+			for (int i = 0; i < angles.length; i++) {
+				angles[i] = (random.nextInt(2 * limit + 1) - limit) * TrigTable.STEP;
+			}
+			double x = random.nextDouble();
+			double y = random.nextDouble();
+			ArmConfig table = new ArmConfig(x, y, angles, true);
+			ArmConfig exact = new ArmConfig(x, y, angles);
+			endpointError = Math.max(endpointError, table.maxDistance(exact));
+		}
+		assertTrue("max endpoint error " + endpointError,
+				endpointError < Tester.DEFAULT_MAX_ERROR);
+	}
+
+	@Test
+	public void offGridAnglesAreComputedExactly() {
+		double[] angles = { 0.3, -1.1, 2.0, 0.7 };
+		ArmConfig table = new ArmConfig(0.4, 0.6, angles, true);
+		ArmConfig exact = new ArmConfig(0.4, 0.6, angles);
+		for (int i = 0; i <= angles.length; i++) {
+			assertEquals(exact.jointX(i), table.jointX(i), 0);
+			assertEquals(exact.jointY(i), table.jointY(i), 0);
+		}
+	}
+
+	@Test
+	public void tableTrigIsKeptPerConfiguration() {
+		double[] angles = { 10 * TrigTable.STEP, -20 * TrigTable.STEP };
+		ArmConfig table = new ArmConfig(0.5, 0.5, angles, true);
+		ArmConfig exact = new ArmConfig(0.5, 0.5, angles);
+		assertTrue(table.isTableTrig());
+		assertFalse(exact.isTableTrig());
+		assertTrue(new ArmConfig(table).isTableTrig());
+		assertTrue(table.withJointAngle(1, 0).isTableTrig());
+		assertTrue(table.withJointAngles(new double[] { 0, 0 }).isTableTrig());
+		assertTrue(table.withBaseDelta(0.1, 0).isTableTrig());
+		assertFalse(exact.withJointAngle(1, 0).isTableTrig());
+		assertFalse(new ArmConfig(exact.toString()).isTableTrig());
+	}
+}
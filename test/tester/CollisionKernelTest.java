@@ -0,0 +1,78 @@
+package tester;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import problem.ArmConfig;
+import problem.Obstacle;
+
+/**
+ * Checks the batch kernel against Tester.hasCollision, one state at a time,
+ * on random walks through random obstacles.
+ */
+public class CollisionKernelTest {
+	@Test
+	public void agreesWithTester() {
+		Random random = new Random(0);
+		for (int n : new int[] { 0, 1, 10, 100 }) {
+			List<Obstacle> obstacles = ObstacleIndexTest.randomObstacles(random, n);
+			for (int jointCount : new int[] { 1, 4, 12 }) {
+				// A count that is not a multiple of the block size leaves a
+				// partial block at the end.
+				check(obstacles, randomWalk(random, jointCount, 3 * CollisionKernel.BLOCK + 17));
+			}
+		}
+	}
+
+	@Test
+	public void handlesEmptyBatches() {
+		List<Obstacle> obstacles = ObstacleIndexTest.randomObstacles(new Random(1), 10);
+		check(obstacles, new ArrayList<ArmConfig>());
+	}
+
+	private static void check(List<Obstacle> obstacles, List<ArmConfig> states) {
+		Tester tester = new Tester();
+		CollisionKernel kernel = new CollisionKernel(tester.indexObstacles(obstacles));
+		int joints = states.isEmpty() ? 1 : states.get(0).getJointCount() + 1;
+		double[][] jointX = new double[joints][states.size()];
+		double[][] jointY = new double[joints][states.size()];
+		for (int s = 0; s < states.size(); s++) {
+			for (int i = 0; i < joints; i++) {
+				jointX[i][s] = states.get(s).jointX(i);
+				jointY[i][s] = states.get(s).jointY(i);
+			}
+		}
+		long[] mask = kernel.colliding(jointX, jointY, states.size());
+		assertEquals((states.size() + CollisionKernel.BLOCK - 1)
+				/ CollisionKernel.BLOCK, mask.length);
+		for (int s = 0; s < states.size(); s++) {
+			ArmConfig cfg = states.get(s);
+			boolean hit = (mask[s / CollisionKernel.BLOCK] & (1L << s)) != 0;
+			assertEquals(cfg.toString(), tester.hasCollision(cfg, obstacles), hit);
+		}
+	}
+
+	/** Returns a walk of small random steps from a random configuration */
+	private static List<ArmConfig> randomWalk(Random random, int jointCount,
+			int length) {
+		double[] angles = new double[jointCount];
+		double x = random.nextDouble();
+		double y = random.nextDouble();
+		List<ArmConfig> states = new ArrayList<ArmConfig>();
+		for (int s = 0; s < length; s++) {
+			x += (random.nextDouble() - 0.5) * 0.02;
+			y += (random.nextDouble() - 0.5) * 0.02;
+			for (int j = 0; j < jointCount; j++) {
+				angles[j] = Math.max(-Tester.MAX_JOINT_ANGLE, Math.min(
+						Tester.MAX_JOINT_ANGLE, angles[j] + (random.nextDouble() - 0.5) * 0.2));
+			}
+			states.add(new ArmConfig(x, y, angles));
+		}
+		return states;
+	}
+}
@@ -0,0 +1,44 @@
+package tester;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import problem.ArmConfig;
+import problem.Obstacle;
+
+/**
+ * Checks the link hierarchy against Tester's per-link obstacle test on
+ * random configurations.
+ */
+public class LinkHierarchyTest {
+	@Test
+	public void agreesWithPerLinkTest() {
+		Random random = new Random(0);
+		int obstacleCount = 20;
+		List<Obstacle> obstacles = new ArrayList<Obstacle>();
+		double size = 0.3 / Math.sqrt(obstacleCount);
+		for (int i = 0; i < obstacleCount; i++) {
+			obstacles.add(new Obstacle(random.nextDouble(), random.nextDouble(),
+					random.nextDouble() * size, random.nextDouble() * size));
+		}
+		Tester tester = new Tester();
+		ObstacleIndex index = tester.indexObstacles(obstacles);
+		for (int n : new int[] { 1, 2, 4, 8, 16, 32 }) {
+			for (int t = 0; t < 5000; t++) {
+				double[] angles = new double[n];
+				for (int j = 0; j < n; j++) {
+					angles[j] = (2 * random.nextDouble() - 1) * Math.PI * 0.6;
+				}
+				ArmConfig cfg = new ArmConfig(random.nextDouble(),
+						random.nextDouble(), angles);
+				assertEquals(cfg.toString(), tester.hasCollisionPerLink(cfg, index),
+						LinkHierarchy.hasCollision(cfg, index));
+			}
+		}
+	}
+}
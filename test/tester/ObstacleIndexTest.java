@@ -0,0 +1,105 @@
+package tester;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import problem.Obstacle;
+
+/**
+ * Checks the obstacle index against a linear scan of the shrunk obstacles,
+ * on random obstacles that may stick out of the workspace.
+ */
+public class ObstacleIndexTest {
+	@Test
+	public void intersectsAgreesWithLinearScan() {
+		Random random = new Random(0);
+		for (int n : new int[] { 0, 1, 10, 100, 500 }) {
+			List<Obstacle> obstacles = randomObstacles(random, n);
+			ObstacleIndex index = new ObstacleIndex(obstacles,
+					Tester.DEFAULT_MAX_ERROR);
+			Rectangle2D[] linear = shrunk(obstacles);
+			for (int t = 0; t < 20000; t++) {
+				double[] s = randomLink(random);
+				boolean expected = false;
+				for (Rectangle2D rect : linear) {
+					expected |= rect.intersectsLine(s[0], s[1], s[2], s[3]);
+				}
+				assertEquals(expected, index.intersects(s[0], s[1], s[2], s[3]));
+			}
+		}
+	}
+
+	@Test
+	public void clearDiscsMissEveryObstacle() {
+		Random random = new Random(1);
+		for (int n : new int[] { 1, 10, 100 }) {
+			List<Obstacle> obstacles = randomObstacles(random, n);
+			ObstacleIndex index = new ObstacleIndex(obstacles,
+					Tester.DEFAULT_MAX_ERROR);
+			Rectangle2D[] linear = shrunk(obstacles);
+			for (int t = 0; t < 20000; t++) {
+				double x = random.nextDouble();
+				double y = random.nextDouble();
+				double radius = random.nextDouble() * 4 * Tester.LINK_LENGTH;
+				if (!index.isDiscClear(x, y, radius)) {
+					continue;
+				}
+				for (Rectangle2D rect : linear) {
+					double dx = Math.max(Math.max(rect.getMinX() - x,
+							x - rect.getMaxX()), 0);
+					double dy = Math.max(Math.max(rect.getMinY() - y,
+							y - rect.getMaxY()), 0);
+					assertTrue(Math.hypot(dx, dy) > radius);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void clearanceAgreesWithIntersects() {
+		Random random = new Random(2);
+		List<Obstacle> obstacles = randomObstacles(random, 50);
+		ObstacleIndex index = new ObstacleIndex(obstacles,
+				Tester.DEFAULT_MAX_ERROR);
+		for (int t = 0; t < 20000; t++) {
+			double[] s = randomLink(random);
+			double clearance = index.clearance(s[0], s[1], s[2], s[3], 0.05);
+			assertEquals(index.intersects(s[0], s[1], s[2], s[3]), clearance < 0);
+		}
+	}
+
+	static List<Obstacle> randomObstacles(Random random, int n) {
+		List<Obstacle> obstacles = new ArrayList<Obstacle>();
+		double size = 0.5 / Math.sqrt(Math.max(n, 1));
+		for (int i = 0; i < n; i++) {
+			obstacles.add(new Obstacle(random.nextDouble() * 1.1 - 0.05,
+					random.nextDouble() * 1.1 - 0.05, random.nextDouble() * size,
+					random.nextDouble() * size));
+		}
+		return obstacles;
+	}
+
+	private static Rectangle2D[] shrunk(List<Obstacle> obstacles) {
+		Rectangle2D[] rects = new Rectangle2D[obstacles.size()];
+		for (int i = 0; i < rects.length; i++) {
+			rects[i] = Tester.grow(obstacles.get(i).getRect(),
+					-Tester.DEFAULT_MAX_ERROR);
+		}
+		return rects;
+	}
+
+	private static double[] randomLink(Random random) {
+		double x = random.nextDouble() * 1.1 - 0.05;
+		double y = random.nextDouble() * 1.1 - 0.05;
+		double angle = random.nextDouble() * 2 * Math.PI;
+		return new double[] { x, y, x + Tester.LINK_LENGTH * Math.cos(angle),
+				y + Tester.LINK_LENGTH * Math.sin(angle) };
+	}
+}
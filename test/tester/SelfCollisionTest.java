@@ -0,0 +1,38 @@
+package tester;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import problem.ArmConfig;
+
+/**
+ * Checks the sweep-and-prune self collision test against the naive
+ * all-pairs test on random arms.
+ */
+public class SelfCollisionTest {
+	@Test
+	public void agreesWithNaiveTest() {
+		Tester tester = new Tester();
+		Random random = new Random(0);
+		for (int n : new int[] { 4, 6, 8, 12, 16, 24, 32, 50 }) {
+			// Arms whose joints bend little are mostly collision-free, the
+			// case where the sweep prunes most.
+			for (double spread : new double[] { Math.PI / 8,
+					Tester.MAX_JOINT_ANGLE }) {
+				for (int t = 0; t < 2000; t++) {
+					double[] angles = new double[n];
+					for (int j = 0; j < n; j++) {
+						angles[j] = (2 * random.nextDouble() - 1) * spread;
+					}
+					ArmConfig cfg = new ArmConfig(random.nextDouble(),
+							random.nextDouble(), angles);
+					assertEquals(cfg.toString(), tester.hasSelfCollisionNaive(cfg),
+							SelfCollision.hasSelfCollision(cfg));
+				}
+			}
+		}
+	}
+}